@@ -0,0 +1,175 @@
+public class AdaptiveController {
+
+	private long budget;
+	private int minAnts, maxAnts;
+
+	// stop after this many iterations without improvement if the ants agree
+	private int patience = 5;
+	private double minDiversity = 0.05;
+
+	// state of the current run
+	private int threads;
+	private long startTime, startCpu;
+	private long iterationStart, iterationCpu;
+	private long lastDuration;
+	private double lastBest;
+	private double averageRate;
+	private int stagnation;
+	private int iterations;
+	private boolean converged;
+
+
+	/**
+	 * Constructor. Creates a controller which keeps a run inside a compute budget and adapts the
+	 * number of ants to the progress of the run, measured as improvement per CPU millisecond. The budget
+	 * is wall clock time on the threads of the Ant System, so a run on Y threads with a budget of X seconds
+	 * gives the best solution within X seconds on Y cores. The controller is only used by the synchronous
+	 * mode, the asynchronous mode has no iterations to adjust.
+	 * @param budgetMillis - the wall clock budget of a run in milliseconds
+	 * @param minAnts - the smallest number of ants
+	 * @param maxAnts - the largest number of ants
+	 */
+	public AdaptiveController(long budgetMillis, int minAnts, int maxAnts) {
+		this.budget = budgetMillis * 1000000L;
+		this.minAnts = Math.max(minAnts, 1);
+		this.maxAnts = Math.max(maxAnts, this.minAnts);
+	}
+
+
+	/**
+	 * Start a run.
+	 * @param ants - the number of ants at the start
+	 * @param bestValue - the value of the starting solution
+	 * @param threads - the number of threads building the solutions
+	 * @param cpuTime - the CPU time used so far by those threads in nanoseconds, negative if it is not measured
+	 */
+	public void start(int ants, double bestValue, int threads, long cpuTime) {
+		this.threads = Math.max(threads, 1);
+		this.startTime = System.nanoTime();
+		this.iterationStart = this.startTime;
+		this.startCpu = cpuTime;
+		this.iterationCpu = cpuTime;
+		this.lastDuration = 0;
+		this.lastBest = bestValue;
+		this.averageRate = 0.0;
+		this.stagnation = 0;
+		this.iterations = 0;
+		this.converged = false;
+	}
+
+
+	/**
+	 * Tell if the next iteration should be started: the run has not converged and the next iteration,
+	 * predicted from the last one scaled to the new number of ants, still fits into the budget.
+	 * @return true if the run goes on.
+	 */
+	public boolean isRunning() {
+		if(this.converged)
+			return false;
+		return System.nanoTime() - this.startTime + this.lastDuration <= this.budget;
+	}
+
+
+	/**
+	 * Record a finished iteration and choose the number of ants for the next one. Without improvement
+	 * for a while the run ends if the ants agree on the solution, otherwise more ants are sent to explore.
+	 * While the best value improves faster than on average, fewer ants give more iterations for the budget.
+	 * @param bestValue - the best value so far
+	 * @param diversity - the disagreement of the ants between 0 and 1
+	 * @param ants - the number of ants in the iteration
+	 * @param cpuTime - the CPU time used so far by the threads in nanoseconds, negative if it is not measured
+	 * @return the number of ants for the next iteration.
+	 */
+	public int adjust(double bestValue, double diversity, int ants, long cpuTime) {
+		long now = System.nanoTime();
+		this.lastDuration = Math.max(now - this.iterationStart, 1);
+		this.iterationStart = now;
+		this.iterations++;
+		// without a measurement every busy thread is counted with the wall time
+		long cpu = cpuTime >= 0 && this.iterationCpu >= 0 ? cpuTime - this.iterationCpu : this.lastDuration * Math.min(this.threads, Math.max(ants, 1));
+		this.iterationCpu = cpuTime;
+
+		// improvement per CPU millisecond of the iteration
+		double rate = (this.lastBest - bestValue) / Math.max(cpu, 1) * 1000000.0;
+		this.lastBest = bestValue;
+		this.averageRate += (rate - this.averageRate) / this.iterations;
+
+		int next = ants;
+		if(rate > 0.0) {
+			this.stagnation = 0;
+			if(rate >= this.averageRate)
+				next = ants - ants / 4;
+		}
+		else if(++this.stagnation >= this.patience) {
+			if(diversity < this.minDiversity)
+				this.converged = true;
+			else {
+				next = ants + (ants + 1) / 2;
+				this.stagnation = 0;
+			}
+		}
+
+		next = Math.max(this.minAnts, Math.min(this.maxAnts, next));
+		// the duration scales with the number of rounds the threads need for the ants
+		this.lastDuration = this.lastDuration / this.rounds(ants) * this.rounds(next);
+		return next;
+	}
+
+
+	/**
+	 * The number of rounds in which the threads build the solutions of the ants.
+	 */
+	private int rounds(int ants) {
+		return Math.max((ants + this.threads - 1) / this.threads, 1);
+	}
+
+
+	/**
+	 * Set when the run is considered converged.
+	 * @param patience - the number of iterations without improvement before the diversity is checked
+	 * @param minDiversity - the diversity below which the ants agree
+	 */
+	public void setConvergence(int patience, double minDiversity) {
+		this.patience = patience;
+		this.minDiversity = minDiversity;
+	}
+
+
+	/**
+	 * Get the number of iterations of the current run.
+	 * @return the number of iterations.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+
+	/**
+	 * Get the time spent in the current run.
+	 * @return the elapsed milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return (System.nanoTime() - this.startTime) / 1000000L;
+	}
+
+
+	/**
+	 * Get the CPU time spent by the threads of the current run until the last finished iteration.
+	 * @return the CPU milliseconds, or -1 if the CPU time is not measured.
+	 */
+	public long getCpuMillis() {
+		if(this.iterationCpu < 0 || this.startCpu < 0)
+			return -1;
+		return (this.iterationCpu - this.startCpu) / 1000000L;
+	}
+
+
+	/**
+	 * Tell if the current run ended because the ants converged.
+	 * @return true if it converged.
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+}
@@ -1,3 +1,5 @@
+import java.util.Random;
+
 
 public class Ant {
 	
@@ -7,6 +9,26 @@ public class Ant {
 	private double alpha;
 	private double beta;
 	private double value;
+	// shared cache of evaluated clusterings, may be null
+	private SolutionCache cache;
+	
+	// selection mode
+	private boolean stochastic;
+	private double q0;
+	private Random generator = new Random();
+	private double[] cumulative;
+	
+	// the order of visiting the nodes, null for the index order
+	private int[] order;
+	// the shared pheromone store in the asynchronous mode, null otherwise
+	private PheromoneStore store;
+	
+	// scratch space reused by the selections
+	private Cluster actual;
+	private double[] prob;
+	// the copy of a pheromone row read from the store, and the matrix view pointing to it
+	private double[] row;
+	private double[][] view;
 	
 
 	/**
@@ -17,13 +39,71 @@ public class Ant {
 	 * @param beta - heuristic coefficient
 	 */
 	public Ant(int size, CorrelationMatrix matrix, double alpha, double beta) {
+		this(size, matrix, alpha, beta, System.nanoTime());
+	}
+	
+	
+	/**
+	 * Constructor. The random starting clustering and the later draws of the ant are repeatable.
+	 * @param size - size of the correlation matrix
+	 * @param matrix - the correlation matrix
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param seed - the seed of the random number generator of the ant
+	 */
+	public Ant(int size, CorrelationMatrix matrix, double alpha, double beta, long seed) {
 		this.size = size;
+		this.generator.setSeed(seed);
 		this.clustering = new Cluster(this.size);
-		this.clustering.generateRandomly();
+		this.clustering.generateRandomly(this.generator);
 		this.correlationMatrix = matrix;
 		this.alpha = alpha;
 		this.beta = beta;
 		this.value = this.clustering.computeValue(this.correlationMatrix);
+		this.actual = new Cluster(this.size);
+	}
+	
+	
+	/**
+	 * Reuse the ant for another problem. The clustering and the scratch space are only reallocated
+	 * if the new problem is larger than any of the earlier ones.
+	 * @param matrix - the new correlation matrix
+	 */
+	public void reset(CorrelationMatrix matrix) {
+		this.size = matrix.getSize();
+		this.correlationMatrix = matrix;
+		this.clustering.resize(this.size);
+		this.clustering.generateRandomly(this.generator);
+		this.order = null;
+		this.value = this.clustering.computeValue(this.correlationMatrix);
+	}
+	
+	
+	/**
+	 * Get the probability scratch array.
+	 * @param count - the number of needed probabilities
+	 * @return an array of at least count elements.
+	 */
+	private double[] scratch(int count) {
+		if(this.prob == null || this.prob.length < count)
+			this.prob = new double[count];
+		return this.prob;
+	}
+	
+	
+	/**
+	 * Copy a pheromone row from the shared store, so the selection does not read it while other ants deposit.
+	 * @param i - the row
+	 * @return a matrix whose row i is the copy, the other rows must not be read.
+	 */
+	private double[][] readRow(int i) {
+		if(this.view == null || this.view.length < this.size) {
+			this.view = new double[this.size][];
+			this.row = new double[this.size];
+		}
+		this.store.copyRow(i, this.row);
+		this.view[i] = this.row;
+		return this.view;
 	}
 	
 	
@@ -46,14 +126,165 @@ public class Ant {
 
 	
 	/**
-	 * Set the clustering to a random clustering.
+	 * Set the clustering to a random clustering drawn from the generator of the ant, see setSeed.
 	 */
 	public void randomize() {
-		this.clustering.generateRandomly();
+		this.clustering.generateRandomly(this.generator);
+		this.value = this.clustering.computeValue(this.correlationMatrix);
+	}
+	
+	
+	/**
+	 * Set the clustering to a random clustering drawn from the given generator.
+	 * @param generator - the random number generator
+	 */
+	public void randomize(Random generator) {
+		this.clustering.generateRandomly(generator);
 		this.value = this.clustering.computeValue(this.correlationMatrix);
 	}
 
 	
+	/**
+	 * Set the clustering to a copy of the given clustering, e.g. to warm start the ant.
+	 * @param clustering - the clustering to start from
+	 */
+	public void setClustering(Cluster clustering) {
+		// a known goodness is copied along, otherwise every ant may start from the same clustering, which is then evaluated only once
+		if(clustering.isComputed()) {
+			this.clustering.copyFrom(clustering);
+			this.value = clustering.getValue();
+			return;
+		}
+		this.clustering.copyFrom(clustering.getClustering(), clustering.getOffset(), clustering.getSize());
+		this.value = this.evaluate();
+	}
+	
+	
+	/**
+	 * Use a cache for the evaluation of the created solutions.
+	 * @param cache - the cache, null turns caching off
+	 */
+	public void setCache(SolutionCache cache) {
+		this.cache = cache;
+	}
+	
+	
+	/**
+	 * Compute the goodness of the clustering, or take it from the cache if the same clustering was already evaluated.
+	 * Every finished solution is looked up before the full evaluation, also the ones whose value was kept up to date
+	 * while they were built, so the cache sees every duplicate; those are stored with their known value.
+	 * @return the goodness.
+	 */
+	private double evaluate() {
+		if(this.cache == null)
+			return this.clustering.computeValue(this.correlationMatrix);
+		if(this.cache.restoreValue(this.clustering))
+			return this.clustering.getValue();
+		double value = this.clustering.computeValue(this.correlationMatrix);
+		this.cache.store(this.clustering);
+		return value;
+	}
+	
+	
+	/**
+	 * Set the way the ant selects a label from the probabilities.
+	 * @param stochastic - draw the label from the distribution instead of taking the most probable one
+	 * @param q0 - in stochastic mode, the probability of still taking the most probable label (as in ACS)
+	 */
+	public void setSelection(boolean stochastic, double q0) {
+		this.stochastic = stochastic;
+		this.q0 = q0;
+	}
+	
+	
+	/**
+	 * Set the order in which the nodes are visited while building a solution. If only some of the nodes
+	 * are listed, only those get new labels, the others keep the labels of the clustering the ant starts from.
+	 * @param order - the nodes to visit, a permutation of all of them or a part of them, null for the index order
+	 */
+	public void setOrder(int[] order) {
+		this.order = order;
+	}
+	
+	
+	/**
+	 * Read the pheromone through a shared store. Every row is copied under its lock, after it is brought up to date.
+	 * @param store - the store, null to read the pheromone matrix directly
+	 */
+	public void setStore(PheromoneStore store) {
+		this.store = store;
+	}
+	
+	
+	/**
+	 * Set the seed of the random number generator used by the stochastic selection.
+	 * @param seed - the seed
+	 */
+	public void setSeed(long seed) {
+		this.generator.setSeed(seed);
+	}
+	
+	
+	/**
+	 * Select an index by its probability.
+	 * @param prob - the unnormalised probabilities
+	 * @param count - the number of probabilities
+	 * @param sumProb - the sum of the probabilities
+	 * @return the selected index, or -1 if no index can be selected.
+	 */
+	private int choose(double[] prob, int count, double sumProb) {
+		int selected = -1;
+		
+		if(this.stochastic && sumProb > 0.0 && sumProb < Double.POSITIVE_INFINITY && this.generator.nextDouble() >= this.q0) {
+			// build the prefix sums once...
+			if(this.cumulative == null || this.cumulative.length < count)
+				this.cumulative = new double[count];
+			double sum = 0.0;
+			for(int i = 0; i < count; i++) {
+				sum += prob[i];
+				this.cumulative[i] = sum;
+			}
+			
+			// ...and find the drawn position with a binary search
+			double r = this.generator.nextDouble() * sum;
+			int low = 0, high = count - 1;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(this.cumulative[middle] > r)
+					high = middle;
+				else
+					low = middle + 1;
+			}
+			return low;
+		}
+		
+		// take the most probable one
+		double actProb, mostProb = 0.0;
+		for(int i = 0; i < count; i++) {
+			actProb = prob[i]/sumProb;
+			if(actProb >= mostProb) {
+				selected = i;
+				mostProb = actProb;
+			}
+		}
+		return selected;
+	}
+	
+	
+	/**
+	 * Keep the goodness of the ant up to date after an edge of the correlation matrix has changed.
+	 * @param i - the first node of the edge
+	 * @param j - the second node of the edge
+	 * @param oldWeight - the previous weight of the edge
+	 * @param newWeight - the new weight of the edge
+	 */
+	public void updateEdge(int i, int j, double oldWeight, double newWeight) {
+		this.clustering.updateEdge(i, j, oldWeight, newWeight);
+		if(this.clustering.isComputed())
+			this.value = this.clustering.getValue();
+	}
+
+	
 	/**
 	 * Search for the best element in a clustering at the given index.
 	 * @param pheromone - the pheromone matrix
@@ -64,11 +295,12 @@ public class Ant {
 	public int selectBest(double[][] pheromone, int element) throws CloneNotSupportedException{
 		
 		int bestElement = this.clustering.getElement(element);
-		double actProb, mostProb = 0.0, sumProb = 0.0;
-		double[] prob = new double[this.size]; 
+		double sumProb = 0.0;
+		double[] prob = this.scratch(this.size);
 		
 		// actual solution
-		Cluster actual = (Cluster)this.clustering.clone();
+		Cluster actual = this.actual;
+		actual.copyFrom(this.clustering);
 				
 		// get the probabilities of the different solutions
 		for(int i = 0; i < this.size; i++) {
@@ -81,17 +313,13 @@ public class Ant {
 		}
 		
 		// reset the actual solution
-		actual.setClustering(this.clustering.getClustering());
+		actual.copyFrom(this.clustering);
 		
 
-		// search for the most probable solution
-		for(int i = 0; i < this.size; i++) {
-			actProb = prob[i]/sumProb;
-			if(actProb >= mostProb) {
-				bestElement = i;
-				mostProb = actProb;
-			}
-		}
+		// search for the most probable solution, or draw one in stochastic mode
+		int selected = this.choose(prob, this.size, sumProb);
+		if(selected != -1)
+			bestElement = selected;
 		
 		return bestElement;
 	}
@@ -106,11 +334,12 @@ public class Ant {
 	public int selectBestImproved(double[][] pheromone, int element) throws CloneNotSupportedException{
 		
 		int bestElement = this.clustering.getElement(element);
-		double actProb, mostProb = 0.0, sumProb = 0.0, temp;
-		double[] prob = new double[this.size]; 
+		double sumProb = 0.0, temp;
+		double[] prob = this.scratch(this.size);
 		
 		// actual solution
-		Cluster actual = (Cluster)this.clustering.clone();
+		Cluster actual = this.actual;
+		actual.copyFrom(this.clustering);
 				
 		// get the probabilities of the different solutions
 		for(int i = 0; i < this.size; i++) {
@@ -123,17 +352,13 @@ public class Ant {
 		}
 		
 		// reset the actual solution
-		actual.setClustering(this.clustering.getClustering());
+		actual.copyFrom(this.clustering);
 		
 
-		// search for the most probable solution
-		for(int i = 0; i < this.size; i++) {
-			actProb = prob[i]/sumProb;
-			if(actProb >= mostProb) {
-				bestElement = i;
-				mostProb = actProb;
-			}
-		}
+		// search for the most probable solution, or draw one in stochastic mode
+		int selected = this.choose(prob, this.size, sumProb);
+		if(selected != -1)
+			bestElement = selected;
 		
 		return bestElement;
 	}
@@ -142,7 +367,7 @@ public class Ant {
 	
 	public int selectBestLocal(double[][] pheromone, int element) throws CloneNotSupportedException{
 		int bestLocal = this.clustering.getElement(element);
-		double actProb, mostProb = 0.0, sumProb = 0.0;
+		double sumProb = 0.0;
 		int[] neighbours;
 		
 		// if the problem is small, use only 2 neighbours
@@ -156,10 +381,11 @@ public class Ant {
 			neighbours = this.clustering.getNeighbourElements(element, numberOfNeighbours);
 		}
 		
-		double[] prob = new double[numberOfNeighbours];
+		double[] prob = this.scratch(numberOfNeighbours);
 		
 		// create a temporary cluster
-		Cluster actual = (Cluster)this.clustering.clone();
+		Cluster actual = this.actual;
+		actual.copyFrom(this.clustering);
 		
 		for(int i = 0; i < numberOfNeighbours; i++) {
 			// modify the selected element... 
@@ -171,45 +397,39 @@ public class Ant {
 		}
 		
 		// reset the actual solution
-		actual.setClustering(this.clustering.getClustering());
+		actual.copyFrom(this.clustering);
 
-		// search for the most probable solution
-		for(int i = 0; i < numberOfNeighbours; i++) {
-			actProb = prob[i]/sumProb;
-			if(actProb >= mostProb) {
-				bestLocal = neighbours[i];
-				mostProb = actProb;
-			}
-		}
+		// search for the most probable solution, or draw one in stochastic mode
+		int selected = this.choose(prob, numberOfNeighbours, sumProb);
+		if(selected != -1)
+			bestLocal = neighbours[selected];
 	
 		return bestLocal;
 	}
 	
 	
+	/**
+	 * Search for the best label of an element among the neighbour labels. The candidates are evaluated
+	 * in place with the incremental goodness, and the element gets its label back at the end, so nothing
+	 * is copied and a selection is proportional to the size of the problem.
+	 * @param pheromone - the pheromone matrix
+	 * @param element - the index in the clustering 
+	 * @return - the best value for the given index
+	 * @throws CloneNotSupportedException
+	 */
 	public int selectBestLocalImproved(double[][] pheromone, int element) throws CloneNotSupportedException{
 		int bestLocal = this.clustering.getElement(element);
-		double actProb, mostProb = 0.0, sumProb = 0.0, temp;
-		int[] neighbours;
+		double sumProb = 0.0, temp;
 		
 		// if the problem is small, use only 2 neighbours
-		int numberOfNeighbours;
-		if(this.size < 5) {
-			numberOfNeighbours = 3;
-			neighbours = this.clustering.getNeighbourElements(element, numberOfNeighbours);
-		}
-		else {
-			numberOfNeighbours = 5;
-			neighbours = this.clustering.getNeighbourElements(element, numberOfNeighbours);
-		}
+		int numberOfNeighbours = this.size < 5 ? 3 : 5;
+		int[] neighbours = this.clustering.getNeighbourElements(element, numberOfNeighbours);
 		
-		double[] prob = new double[numberOfNeighbours];
-		
-		// create a temporary cluster
-		Cluster actual = (Cluster)this.clustering.clone();
+		double[] prob = this.scratch(numberOfNeighbours);
 		
 		for(int i = 0; i < numberOfNeighbours; i++) {
 			// modify the selected element... 
-			temp = actual.modifyClusteringAndComputeValue(element, neighbours[i], this.correlationMatrix);
+			temp = this.clustering.modifyClusteringAndComputeValue(element, neighbours[i], this.correlationMatrix);
 			// and compute&store the probability of the solution
 			prob[i] = Math.pow(pheromone[element][neighbours[i]], this.alpha) * Math.pow((1.0 / temp), this.beta);
 			// increase the sum
@@ -217,16 +437,12 @@ public class Ant {
 		}
 		
 		// reset the actual solution
-		actual.setClustering(this.clustering.getClustering());
+		this.clustering.modifyClusteringAndComputeValue(element, bestLocal, this.correlationMatrix);
 
-		// search for the most probable solution
-		for(int i = 0; i < numberOfNeighbours; i++) {
-			actProb = prob[i]/sumProb;
-			if(actProb >= mostProb) {
-				bestLocal = neighbours[i];
-				mostProb = actProb;
-			}
-		}
+		// search for the most probable solution, or draw one in stochastic mode
+		int selected = this.choose(prob, numberOfNeighbours, sumProb);
+		if(selected != -1)
+			bestLocal = neighbours[selected];
 	
 		return bestLocal;
 	}
@@ -241,10 +457,16 @@ public class Ant {
 	 * @throws CloneNotSupportedException
 	 */
 	public void createSolution(double[][] pheromone) throws CloneNotSupportedException{
-		for(int i = 0; i < this.size; i++)
-			this.clustering.modifyClustering(i, this.selectBest(pheromone, i));
-		this.clustering.makeUniform();
-		this.value = this.clustering.computeValue(this.correlationMatrix);
+		int visits = this.order == null ? this.size : this.order.length;
+		for(int k = 0; k < visits; k++) {
+			int i = this.order == null ? k : this.order[k];
+			double[][] levels = this.store != null ? this.readRow(i) : pheromone;
+			this.clustering.modifyClustering(i, this.selectBest(levels, i));
+		}
+		// a partial rebuild keeps the labels of the other nodes, so it keeps their meaning too
+		if(visits == this.size)
+			this.clustering.makeUniform();
+		this.value = this.evaluate();
 	}
 	
 
@@ -256,10 +478,16 @@ public class Ant {
 	 * @throws CloneNotSupportedException
 	 */
 	public void createSolutionImproved(double[][] pheromone) throws CloneNotSupportedException{
-		for(int i = 0; i < this.size; i++)
-			this.clustering.modifyClustering(i, this.selectBestImproved(pheromone, i));
-		this.clustering.makeUniform();
-		this.value = this.clustering.computeValue(this.correlationMatrix);
+		int visits = this.order == null ? this.size : this.order.length;
+		for(int k = 0; k < visits; k++) {
+			int i = this.order == null ? k : this.order[k];
+			double[][] levels = this.store != null ? this.readRow(i) : pheromone;
+			this.clustering.modifyClusteringAndComputeValue(i, this.selectBestImproved(levels, i), this.correlationMatrix);
+		}
+		// a partial rebuild keeps the labels of the other nodes, so it keeps their meaning too
+		if(visits == this.size)
+			this.clustering.makeUniform();
+		this.value = this.evaluate();
 	}	
 	
 	
@@ -273,10 +501,16 @@ public class Ant {
 	 * @throws CloneNotSupportedException
 	 */
 	public void createLocalSolution(double[][] pheromone) throws CloneNotSupportedException{
-		for(int i = 0; i < this.size; i++)
-			this.clustering.modifyClustering(i, this.selectBestLocal(pheromone, i));
-		this.clustering.makeUniform();
-		this.value = this.clustering.computeValue(this.correlationMatrix);
+		int visits = this.order == null ? this.size : this.order.length;
+		for(int k = 0; k < visits; k++) {
+			int i = this.order == null ? k : this.order[k];
+			double[][] levels = this.store != null ? this.readRow(i) : pheromone;
+			this.clustering.modifyClustering(i, this.selectBestLocal(levels, i));
+		}
+		// a partial rebuild keeps the labels of the other nodes, so it keeps their meaning too
+		if(visits == this.size)
+			this.clustering.makeUniform();
+		this.value = this.evaluate();
 	}
 	
 	
@@ -287,10 +521,16 @@ public class Ant {
 	 * @throws CloneNotSupportedException
 	 */
 	public void createLocalSolutionImproved(double[][] pheromone) throws CloneNotSupportedException{
-		for(int i = 0; i < this.size; i++)
-			this.clustering.modifyClustering(i, this.selectBestLocalImproved(pheromone, i));
-		this.clustering.makeUniform();
-		this.value = this.clustering.computeValue(this.correlationMatrix);
+		int visits = this.order == null ? this.size : this.order.length;
+		for(int k = 0; k < visits; k++) {
+			int i = this.order == null ? k : this.order[k];
+			double[][] levels = this.store != null ? this.readRow(i) : pheromone;
+			this.clustering.modifyClusteringAndComputeValue(i, this.selectBestLocalImproved(levels, i), this.correlationMatrix);
+		}
+		// a partial rebuild keeps the labels of the other nodes, so it keeps their meaning too
+		if(visits == this.size)
+			this.clustering.makeUniform();
+		this.value = this.evaluate();
 	}
 	
 	
@@ -1,15 +1,74 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class AntSystem {
+public class AntSystem implements Closeable {
 	
 	private CorrelationMatrix matrix;
 	private double[][] pheromone;
 	private int size, numberOfAnts, maxIterations;
 	private double ratio, alpha, beta, rho;
 	private ArrayList<Ant> anti;
+	// the solutions of the ants in the last iteration
+	private Population population;
 	private Cluster solution;
 	private boolean isSolved;
 	private boolean local;
+	// written under the lock of offer in the asynchronous mode, read by the stop checks of the workers
+	private volatile double bestValue;
+	
+	// nodes touched by edge updates since the last solve
+	private boolean[] changed;
+	private ArrayList<Integer> changedNodes;
+	
+	// state needed to resume an interrupted run
+	private int iteration;
+	private long seed = System.nanoTime();
+	private Random generator = new Random(this.seed);
+	private Cluster initialClustering;
+	private Seeder seeder;
+	private NodeOrder nodeOrder;
+	private int[] fixedOrder;
+	private boolean stochastic;
+	private double q0;
+	private double seedBias;
+	private String checkpointFile;
+	private int checkpointInterval;
+	private IOException checkpointError;
+	
+	// System.nanoTime after which no new iteration is started, 0 for no deadline
+	private long deadline;
+	private SolutionCache cache;
+	private PheromoneUpdate update = new AntSystemUpdate();
+	
+	// resolve stops after this many iterations without improvement, 0 only repairs the touched nodes
+	private int resolvePatience = 10;
+	private volatile int lastImprovement;
+	
+	// stop when the relative gap to the lower bound is reached, negative turns it off
+	private double gapTolerance = -1.0;
+	private LowerBound lowerBound;
+	
+	// parallel construction and the adaptive control of the run
+	private ExecutorService workers;
+	private int threads = 1;
+	// the threads of the pool, for measuring their CPU time
+	private List<Thread> workerThreads = Collections.synchronizedList(new ArrayList<Thread>());
+	private boolean asynchronous;
+	// set when the solving thread is interrupted while the workers are running
+	private volatile boolean stopRequested;
+	private AdaptiveController controller;
+	private ProgressListener listener;
+	// receives every improving solution, e.g. to stream the run to a file
+	private ResultWriter solutionWriter;
+	private IOException solutionWriterError;
+	
+	// identifies checkpoint files
+	private static final int CHECKPOINT_MAGIC = 0x41435331;
 	
 	
 	/**
@@ -39,8 +98,13 @@ public class AntSystem {
 		
 		this.anti = new ArrayList<Ant>();
 		for(int i = 0; i < this.numberOfAnts; i++)
-			this.anti.add(new Ant(this.size, this.matrix, this.alpha, this.beta));
+			this.anti.add(new Ant(this.size, this.matrix, this.alpha, this.beta, this.generator.nextLong()));
+		this.population = new Population(this.numberOfAnts, this.size);
+		this.bindAnts();
+		this.storeAnts();
 		this.isSolved = false;
+		this.changed = new boolean[this.size];
+		this.changedNodes = new ArrayList<Integer>();
 	}
 	
 	
@@ -68,39 +132,598 @@ public class AntSystem {
 		
 		this.anti = new ArrayList<Ant>();
 		for(int i = 0; i < this.numberOfAnts; i++)
-			this.anti.add(new Ant(this.size, this.matrix, this.alpha, this.beta));
+			this.anti.add(new Ant(this.size, this.matrix, this.alpha, this.beta, this.generator.nextLong()));
+		this.population = new Population(this.numberOfAnts, this.size);
+		this.bindAnts();
+		this.storeAnts();
+		this.isSolved = false;
+		this.changed = new boolean[this.size];
+		this.changedNodes = new ArrayList<Integer>();
+	}
+	
+	
+	/**
+	 * Constructor. Creates an Ant System on an existing correlation matrix. The matrix is not copied,
+	 * so later edge updates made through the Ant System are visible to the caller.
+	 * @param matrix - the correlation matrix
+	 * @param number - number of ants
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations
+	 * @param local - use only the neighbour labels while building the solutions
+	 */
+	public AntSystem(CorrelationMatrix matrix, int number, double alpha, double beta, double rho, int maxIterations, boolean local) {
+		this.matrix = matrix;
+		this.size = this.matrix.getSize();
+		this.alpha = alpha;
+		this.beta = beta;
+		this.rho = rho;
+		this.numberOfAnts = number;
+		this.maxIterations = maxIterations;
+		this.local = local;
+		this.pheromone = new double[this.size][this.size];
+		for(int i = 0; i < this.size; i++)
+			for(int j = 0; j < this.size; j++)
+				this.pheromone[i][j] = 1.0;
+		
+		this.anti = new ArrayList<Ant>();
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.anti.add(new Ant(this.size, this.matrix, this.alpha, this.beta, this.generator.nextLong()));
+		this.population = new Population(this.numberOfAnts, this.size);
+		this.bindAnts();
+		this.storeAnts();
 		this.isSolved = false;
+		this.changed = new boolean[this.size];
+		this.changedNodes = new ArrayList<Integer>();
 	}
 		
 	
+	/**
+	 * Reuse the Ant System for another problem with the same parameters. The pheromone matrix,
+	 * the ants and their scratch space are kept and only reallocated if the new problem is larger
+	 * than any of the earlier ones.
+	 * @param matrix - the new correlation matrix
+	 */
+	public void reset(CorrelationMatrix matrix) {
+		this.matrix = matrix;
+		this.size = matrix.getSize();
+		if(this.pheromone.length < this.size)
+			this.pheromone = new double[this.size][this.size];
+		for(int i = 0; i < this.size; i++)
+			for(int j = 0; j < this.size; j++)
+				this.pheromone[i][j] = 1.0;
+		
+		// the ants are bound to their new rows first, so resetting one cannot overwrite the old row of another
+		this.population.resize(this.numberOfAnts, this.size);
+		this.bindAnts();
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.anti.get(i).reset(this.matrix);
+		this.storeAnts();
+		if(this.changed.length < this.size)
+			this.changed = new boolean[this.size];
+		this.clearChanges();
+		if(this.cache != null)
+			this.cache.clear();
+		this.lowerBound = null;
+		
+		this.solution = null;
+		this.isSolved = false;
+		this.iteration = 0;
+		this.setNodeOrder(this.nodeOrder);
+	}
+	
+	
 	/**
 	 * Solve the problem
 	 * @return - a Cluster containing the results
 	 * @throws CloneNotSupportedException
 	 */
 	public Cluster solve() throws CloneNotSupportedException{
-		Cluster solution = new Cluster(this.size);
-		solution.generateRandomly();
-		double bestValue = solution.computeValue(this.matrix);
+		this.generator.setSeed(this.seed);
+		this.solution = new Cluster(this.size);
+		if(this.initialClustering != null) {
+			// start the solution and all of the ants from the given clustering
+			this.solution.setClustering(this.initialClustering.getClustering());
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.anti.get(i).setClustering(this.initialClustering);
+		}
+		else if(this.seeder != null)
+			this.startFromSeeder();
+		else {
+			// the ants start over as well, so the run only depends on the seed
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.anti.get(i).randomize(this.generator);
+			this.solution.generateRandomly(this.generator);
+		}
+		this.bestValue = this.solution.computeValue(this.matrix);
+		this.clearChanges();
+		this.iteration = 0;
 		
-		for(int iteration = 0; iteration < this.maxIterations; iteration++) {
-			//System.out.println("\n" + iteration + ": " + bestValue);
-			for(int i = 0; i < this.numberOfAnts; i++) {
-				if(this.local)
-					this.anti.get(i).createLocalSolutionImproved(this.pheromone);
-				else
-					this.anti.get(i).createSolutionImproved(this.pheromone);
-				if(this.anti.get(i).getValue() < bestValue) {
-					solution = (Cluster)this.anti.get(i).getClustering().clone();
-					bestValue = this.anti.get(i).getValue();
+		return this.iterate(0, null);
+	}
+	
+	
+	/**
+	 * Start the ants from the clusterings of the seeder, keep the best one as the solution,
+	 * and add the bias to the pheromone along it.
+	 */
+	private void startFromSeeder() {
+		Cluster best = null;
+		for(int i = 0; i < Math.max(this.numberOfAnts, 1); i++) {
+			Cluster start = this.seeder.seed(this.matrix, this.generator);
+			start.makeUniform();
+			start.computeValue(this.matrix);
+			if(i < this.numberOfAnts)
+				this.anti.get(i).setClustering(start);
+			if(best == null || start.getValue() < best.getValue())
+				best = start;
+		}
+		this.solution.setClustering(best.getClustering());
+		
+		// the labels are uniform, so they mean the same as the labels of the ants
+		for(int i = 0; i < this.size; i++)
+			this.pheromone[i][best.getElement(i)] += this.seedBias;
+	}
+	
+	
+	/**
+	 * Continue an interrupted run from a checkpoint written by saveCheckpoint. The Ant System
+	 * has to be created on the same correlation matrix; the number of ants is taken from the checkpoint.
+	 * @param filename - the checkpoint file
+	 * @return - a Cluster containing the results
+	 * @throws IOException if the checkpoint can not be read or does not fit the problem
+	 * @throws CloneNotSupportedException
+	 */
+	public Cluster resume(String filename) throws IOException, CloneNotSupportedException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+		try {
+			if(in.readInt() != CHECKPOINT_MAGIC)
+				throw new IOException("Not a checkpoint file: " + filename);
+			if(in.readInt() != this.size)
+				throw new IOException("The checkpoint does not fit the problem: " + filename);
+			// the number of ants may have been changed by a controller
+			this.setNumberOfAnts(in.readInt());
+			
+			this.iteration = in.readInt();
+			this.seed = in.readLong();
+			this.bestValue = in.readDouble();
+			
+			// best solution
+			int[] labels = new int[this.size];
+			for(int i = 0; i < this.size; i++)
+				labels[i] = in.readInt();
+			this.solution = new Cluster(this.size);
+			this.solution.setClustering(labels);
+			this.solution.setValue(this.bestValue);
+			
+			// pheromone levels
+			for(int i = 0; i < this.size; i++)
+				for(int j = 0; j < this.size; j++)
+					this.pheromone[i][j] = in.readDouble();
+			
+			// ant states
+			Cluster state = new Cluster(this.size);
+			for(int k = 0; k < this.numberOfAnts; k++) {
+				for(int i = 0; i < this.size; i++)
+					labels[i] = in.readInt();
+				state.setClustering(labels);
+				this.anti.get(k).setClustering(state);
+			}
+		} finally {
+			in.close();
+		}
+		
+		this.clearChanges();
+		return this.iterate(0, null);
+	}
+	
+	
+	/**
+	 * Write the full solver state (iteration counter, random seed, best solution, pheromone levels
+	 * and ant states) to a binary checkpoint. The file is written next to the target and renamed
+	 * at the end, so an interrupted write never destroys the previous checkpoint.
+	 * @param filename - the checkpoint file
+	 * @throws IOException
+	 */
+	public void saveCheckpoint(String filename) throws IOException {
+		this.saveCheckpoint(filename, this.iteration);
+	}
+	
+	
+	/**
+	 * Write a checkpoint with a given iteration counter.
+	 * @param filename - the checkpoint file
+	 * @param iterations - the number of finished iterations
+	 * @throws IOException
+	 */
+	private void saveCheckpoint(String filename, int iterations) throws IOException {
+		File target = new File(filename);
+		File temp = new File(filename + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(this.size);
+			out.writeInt(this.numberOfAnts);
+			out.writeInt(iterations);
+			out.writeLong(this.seed);
+			out.writeDouble(this.bestValue);
+			for(int i = 0; i < this.size; i++)
+				out.writeInt(this.solution.getElement(i));
+			for(int i = 0; i < this.size; i++)
+				for(int j = 0; j < this.size; j++)
+					out.writeDouble(this.pheromone[i][j]);
+			for(int k = 0; k < this.numberOfAnts; k++)
+				for(int i = 0; i < this.size; i++)
+					out.writeInt(this.anti.get(k).getClustering().getElement(i));
+		} finally {
+			out.close();
+		}
+		
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			// the target is still replaced in one step, only not atomically
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	
+	/**
+	 * Write a checkpoint periodically while solving.
+	 * @param filename - the checkpoint file
+	 * @param interval - number of iterations between two checkpoints, 0 turns it off
+	 */
+	public void setCheckpoint(String filename, int interval) {
+		this.checkpointFile = filename;
+		this.checkpointInterval = interval;
+	}
+	
+	
+	/**
+	 * Start the next solve from a given clustering instead of a random one.
+	 * @param clustering - the starting clustering, null for a random start
+	 */
+	public void setInitialClustering(Cluster clustering) {
+		this.initialClustering = clustering;
+	}
+	
+	
+	/**
+	 * Start the next solve from constructive clusterings instead of random ones. Every ant gets its own
+	 * seed clustering, the best one becomes the initial solution.
+	 * @param seeder - the seeder, null for a random start
+	 * @param bias - pheromone added along the best seed clustering
+	 */
+	public void setSeeder(Seeder seeder, double bias) {
+		this.seeder = seeder;
+		this.seedBias = bias;
+	}
+	
+	
+	/**
+	 * Set the order in which the ants visit the nodes. A fixed order is computed once, a random one
+	 * for every ant in every iteration. To also make the rows cache friendly, permute the matrix with
+	 * CorrelationMatrix.permute before creating the Ant System, and map the solution back with NodeOrder.restore.
+	 * @param nodeOrder - the order, null for the index order
+	 */
+	public void setNodeOrder(NodeOrder nodeOrder) {
+		this.nodeOrder = nodeOrder;
+		this.fixedOrder = nodeOrder != null && nodeOrder.isFixed() ? nodeOrder.order(this.matrix, this.generator) : null;
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.anti.get(i).setOrder(this.fixedOrder);
+	}
+	
+	
+	/**
+	 * Cache the goodness of the finished solutions and of the starting clusterings of the ants, so repeated
+	 * ones are looked up instead of evaluated again. Every finished solution is looked up, in every construction
+	 * mode. The improved construction already knows the value of its solutions, so a hit saves no work there,
+	 * but the counters still show the duplicates; the other constructions skip the full evaluation on a hit.
+	 * @param capacity - the maximal number of cached solutions, 0 turns caching off
+	 */
+	public void setCacheSize(int capacity) {
+		this.cache = capacity > 0 ? new SolutionCache(capacity) : null;
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.anti.get(i).setCache(this.cache);
+	}
+	
+	
+	/**
+	 * Get the solution cache.
+	 * @return the cache, or null if caching is off.
+	 */
+	public SolutionCache getCache() {
+		return cache;
+	}
+	
+	
+	/**
+	 * Set the way the ants select the labels.
+	 * @param stochastic - draw the labels from the distribution instead of taking the most probable ones
+	 * @param q0 - in stochastic mode, the probability of still taking the most probable label
+	 */
+	public void setSelection(boolean stochastic, double q0) {
+		this.stochastic = stochastic;
+		this.q0 = q0;
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.anti.get(i).setSelection(stochastic, q0);
+	}
+	
+	
+	/**
+	 * Stop solving as soon as the solution is provably good enough.
+	 * @param gap - the accepted relative gap (best - bound) / best, negative to always run every iteration
+	 */
+	public void setGapTolerance(double gap) {
+		this.gapTolerance = gap;
+	}
+	
+	
+	/**
+	 * Stop solving at a given time. The running iteration is finished and the best solution so far is returned.
+	 * Solving also stops when the thread is interrupted.
+	 * @param deadline - the System.nanoTime of the deadline, 0 for no deadline
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	
+	/**
+	 * Tell if the deadline has passed or the thread was interrupted.
+	 * @return true if solving has to stop.
+	 */
+	private boolean isStopped() {
+		if(this.stopRequested || Thread.currentThread().isInterrupted())
+			return true;
+		return this.deadline != 0 && System.nanoTime() - this.deadline > 0;
+	}
+	
+	
+	/**
+	 * Tell if the best solution has not improved for a given number of iterations.
+	 * @param iteration - the current iteration
+	 * @param patience - the number of iterations, 0 never stops
+	 * @return true if solving can stop.
+	 */
+	private boolean isStagnating(int iteration, int patience) {
+		return patience > 0 && iteration - this.lastImprovement >= patience;
+	}
+	
+	
+	/**
+	 * Get the error of the last periodic checkpoint.
+	 * @return the error, or null if the last checkpoint was written.
+	 */
+	public IOException getCheckpointError() {
+		return checkpointError;
+	}
+	
+	
+	/**
+	 * Tell if the best solution is within the accepted gap of the lower bound.
+	 * @return true if solving can stop.
+	 */
+	private boolean isGapReached() {
+		if(this.gapTolerance < 0.0 || this.lowerBound == null)
+			return false;
+		// one read, the workers may improve it meanwhile
+		double best = this.bestValue;
+		return best - this.lowerBound.getValue() <= this.gapTolerance * best;
+	}
+	
+	
+	/**
+	 * Get the lower bound of the error. It is computed on first use with every available core,
+	 * and kept up to date by updateEdge afterwards. If the thread is interrupted meanwhile, the computation
+	 * is stopped, the interrupt flag is set again and an uncomputed bound with the value 0 is returned;
+	 * it is not kept, so the gap never depends on a partly packed bound.
+	 * @return the lower bound.
+	 */
+	public LowerBound getLowerBound() {
+		if(this.lowerBound == null) {
+			LowerBound bound = new LowerBound(this.matrix);
+			try {
+				bound.compute(Runtime.getRuntime().availableProcessors());
+			} catch (InterruptedException e) {
+				// every packing thread has stopped, the partial packing is dropped
+				Thread.currentThread().interrupt();
+				return new LowerBound(this.matrix);
+			}
+			this.lowerBound = bound;
+		}
+		return this.lowerBound;
+	}
+	
+	
+	/**
+	 * Set the seed of the random number generator, which makes the runs repeatable.
+	 * @param seed - the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.generator.setSeed(seed);
+	}
+	
+	
+	/**
+	 * Solve the problem again after some edges were changed with updateEdge. The previous solution
+	 * and the pheromone levels are kept, and only the nodes touched by the changes are repaired. Then the ants
+	 * start from the repaired solution and rebuild only the touched nodes and their neighbours in the same clusters,
+	 * i.e. the clusters whose error changed, until they stop improving it, see setResolvePatience. The pheromone levels are only read, so the work depends on the
+	 * changes and not on the size of the problem, apart from copying the labels.
+	 * If the problem is not solved yet it solves it first.
+	 * @return - a Cluster containing the results
+	 * @throws CloneNotSupportedException
+	 */
+	public Cluster resolve() throws CloneNotSupportedException{
+		if(!(this.isSolved))
+			return this.solve();
+		
+		this.solution.repairNodes(this.changedNodes, this.matrix);
+		this.bestValue = this.solution.getValue();
+		int[] region = this.touchedRegion();
+		this.clearChanges();
+		this.iteration = 0;
+		if(this.resolvePatience <= 0 || region.length == 0)
+			return (Cluster)this.solution.clone();
+		
+		for(int i = 0; i < this.numberOfAnts; i++) {
+			this.anti.get(i).setClustering(this.solution);
+			this.anti.get(i).setOrder(region);
+		}
+		try {
+			return this.iterate(this.resolvePatience, region);
+		} finally {
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.anti.get(i).setOrder(this.fixedOrder);
+		}
+	}
+	
+	
+	/**
+	 * Collect the changed nodes and their neighbours in the clusters of the changed nodes, in index order.
+	 * @return the nodes.
+	 */
+	private int[] touchedRegion() {
+		int[] columns = new int[this.size];
+		double[] weights = new double[this.size];
+		int changes = this.changedNodes.size();
+		ArrayList<Integer> nodes = new ArrayList<Integer>(this.changedNodes);
+		for(int k = 0; k < changes; k++) {
+			int node = this.changedNodes.get(k);
+			int count = this.matrix.getNeighbours(node, columns, weights);
+			for(int e = 0; e < count; e++)
+				if(!(this.changed[columns[e]]) && this.solution.getElement(columns[e]) == this.solution.getElement(node)) {
+					this.changed[columns[e]] = true;
+					nodes.add(columns[e]);
 				}
+		}
+		
+		// the marks of the changed nodes are cleared by clearChanges
+		int[] region = new int[nodes.size()];
+		for(int k = 0; k < region.length; k++) {
+			region[k] = nodes.get(k);
+			if(k >= changes)
+				this.changed[region[k]] = false;
+		}
+		Arrays.sort(region);
+		return region;
+	}
+	
+	
+	/**
+	 * Set how long resolve goes on without improving the solution. It never runs more than the maximum
+	 * number of iterations.
+	 * @param patience - the number of iterations without improvement, 0 only repairs the touched nodes
+	 */
+	public void setResolvePatience(int patience) {
+		this.resolvePatience = patience;
+	}
+	
+	
+	/**
+	 * Insert, delete or flip an edge of the live correlation matrix. The stored solution and the ants
+	 * are updated in constant time each, the touched nodes are repaired by the next resolve.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @param value - the new edge value: 1, -1 or 0 to delete the edge
+	 */
+	public void updateEdge(int i, int j, int value) {
+		// a weighted matrix keeps the weight of a flipped edge, so the errors are updated with the real weights
+		double oldWeight = this.matrix.getWeight(i, j);
+		this.matrix.setEdge(i, j, value);
+		double newWeight = this.matrix.getWeight(i, j);
+		if(oldWeight == newWeight || i == j)
+			return;
+		
+		// the cached values belong to the old matrix
+		if(this.cache != null)
+			this.cache.clear();
+		if(this.solution != null)
+			this.solution.updateEdge(i, j, oldWeight, newWeight);
+		if(this.lowerBound != null)
+			this.lowerBound.updateEdge(i, j);
+		for(int k = 0; k < this.numberOfAnts; k++)
+			this.anti.get(k).updateEdge(i, j, oldWeight, newWeight);
+		
+		// remember the touched nodes for the repair
+		if(!(this.changed[i])) {
+			this.changed[i] = true;
+			this.changedNodes.add(i);
+		}
+		if(!(this.changed[j])) {
+			this.changed[j] = true;
+			this.changedNodes.add(j);
+		}
+	}
+	
+	
+	/**
+	 * Forget the changed nodes.
+	 */
+	private void clearChanges() {
+		for(int k = 0; k < this.changedNodes.size(); k++)
+			this.changed[this.changedNodes.get(k)] = false;
+		this.changedNodes.clear();
+	}
+	
+	
+	/**
+	 * Run the ants starting from the stored solution and pheromone levels.
+	 * @param patience - stop after this many iterations without improvement, 0 for no such limit
+	 * @param region - the only nodes the ants rebuild, starting from the best solution in every iteration,
+	 * without updating the pheromone; null to build whole solutions
+	 * @return - a Cluster containing the results
+	 * @throws CloneNotSupportedException
+	 */
+	private Cluster iterate(int patience, int[] region) throws CloneNotSupportedException{
+		if(this.gapTolerance >= 0.0)
+			this.getLowerBound();
+		this.stopRequested = false;
+		
+		this.improved(this.iteration);
+		this.lastImprovement = this.iteration;
+		// a controller needs the iterations of the synchronous mode
+		if(this.asynchronous && this.workers != null && region == null && this.controller == null)
+			return this.iterateAsynchronously(patience);
+		
+		// the partial rebuilds of resolve are not controlled
+		AdaptiveController controller = region == null ? this.controller : null;
+		if(controller != null)
+			controller.start(this.numberOfAnts, this.bestValue, this.threads, this.getCpuTime());
+		
+		for(; (controller != null ? controller.isRunning() : this.iteration < this.maxIterations) && !(this.isGapReached()) && !(this.isStagnating(this.iteration, patience)) && !(this.isStopped()); this.iteration++) {
+			//System.out.println("\n" + this.iteration + ": " + this.bestValue);
+			// the generator state only depends on the seed and the iteration, so runs can be resumed
+			this.generator.setSeed(this.seed + this.iteration);
+			if(region == null && this.nodeOrder != null && !(this.nodeOrder.isFixed()))
+				for(int i = 0; i < this.numberOfAnts; i++)
+					this.anti.get(i).setOrder(this.nodeOrder.order(this.matrix, this.generator));
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.anti.get(i).setSeed(this.generator.nextLong());
+			this.construct();
+			int best = this.population.best();
+			if(best != -1 && this.population.getValue(best) < this.bestValue) {
+				this.population.copyTo(best, this.solution);
+				this.bestValue = this.population.getValue(best);
+				this.lastImprovement = this.iteration;
+				this.improved(this.iteration);
 			}
-			this.updatePheromone();
+			if(region == null)
+				this.updatePheromone();
 			//System.out.printf("Solutions: ");
+			double diversity = controller != null ? this.getDiversity() : 0.0;
 			for(int i = 0; i < this.numberOfAnts; i++) {
 				//System.out.printf("%.2f ", this.anti.get(i).getValue());
-				this.anti.get(i).randomize();
+				if(region == null)
+					this.anti.get(i).randomize(this.generator);
+				else
+					this.anti.get(i).setClustering(this.solution);
 			}
+			if(controller != null)
+				this.setNumberOfAnts(controller.adjust(this.bestValue, diversity, this.numberOfAnts, this.getCpuTime()));
 			/*
 			for(int i = 0; i < this.size; i++) {
 				for(int j = 0; j< this.size; j++)
@@ -108,28 +731,387 @@ public class AntSystem {
 				System.out.println();
 			}
 			*/
-			System.out.printf(".");
 			
+			// the checkpoint already counts the finished iteration
+			if(this.checkpointFile != null && this.checkpointInterval > 0 && (this.iteration + 1) % this.checkpointInterval == 0) {
+				try {
+					this.saveCheckpoint(this.checkpointFile, this.iteration + 1);
+					this.checkpointError = null;
+				} catch (IOException e) {
+					// solving goes on, the caller can check the error
+					this.checkpointError = e;
+				}
+			}
 		}
 		
-		this.solution = (Cluster)solution.clone();
 		this.isSolved = true;
-		return (Cluster)solution.clone();
+		return (Cluster)this.solution.clone();
 	}
 	
 	
 	/**
-	 * Update pheromone levels.
+	 * Run the ants without waiting for each other. The ants take turns on the worker threads: every ant deposits
+	 * as soon as its solution is ready and waits for its next turn behind the other ants, while the pheromone evaporates once per numberOfAnts finished solutions, so an iteration
+	 * means as many solutions as in the synchronous mode. The deposit amounts come from the pheromone update,
+	 * but the other parts of its rule need the whole iteration and are left out. The order of the deposits
+	 * depends on the threads, so the runs are not reproducible, and no checkpoints are written.
+	 * @return - a Cluster containing the results
+	 * @throws CloneNotSupportedException
 	 */
-	public void updatePheromone() {
-		for(int i = 0; i < this.size; i++)
-			for(int j = 0; j< this.size; j++){
-				this.pheromone[i][j] *= (1.0 - this.rho);
-				for(int k = 0; k < this.numberOfAnts; k++)
-					if(this.anti.get(k).getClustering().getElement(i) == j)
-						this.pheromone[i][j] += 1.0 / this.anti.get(k).getValue();
-				
+	private Cluster iterateAsynchronously(final int patience) throws CloneNotSupportedException {
+		final PheromoneStore store = new PheromoneStore(this.pheromone, this.size, this.rho);
+		final int startIteration = this.iteration;
+		final AtomicInteger remaining = new AtomicInteger((this.maxIterations - this.iteration) * this.numberOfAnts);
+		final AtomicInteger finished = new AtomicInteger();
+		// the finished iterations are only counted here, the worker crossing an iteration boundary increments it
+		final AtomicInteger iterations = new AtomicInteger(startIteration);
+		
+		// the ants wait in a queue, so every ant gets its turn even if there are more ants than threads
+		final ConcurrentLinkedQueue<Ant> idle = new ConcurrentLinkedQueue<Ant>();
+		this.generator.setSeed(this.seed + this.iteration);
+		for(int i = 0; i < this.numberOfAnts; i++) {
+			Ant ant = this.anti.get(i);
+			ant.setSeed(this.generator.nextLong());
+			ant.setStore(store);
+			idle.add(ant);
+		}
+		
+		ArrayList<Future<Object>> running = new ArrayList<Future<Object>>();
+		for(int t = 0; t < Math.min(this.threads, this.numberOfAnts); t++)
+			running.add(this.workers.submit(new Callable<Object>() {
+				public Object call() throws CloneNotSupportedException {
+					AntSystem system = AntSystem.this;
+					while(!(system.isGapReached()) && !(system.isStagnating(iterations.get(), patience)) && !(system.isStopped()) && remaining.getAndDecrement() > 0) {
+						// there are at least as many ants as workers, so the queue is never empty here
+						Ant ant = idle.poll();
+						system.constructAnt(ant);
+						store.deposit(ant.getClustering(), system.update.amount(ant.getValue()));
+						system.offer(ant, iterations.get());
+						int count = finished.incrementAndGet();
+						if(count % system.numberOfAnts == 0) {
+							store.evaporate();
+							iterations.incrementAndGet();
+						}
+						ant.randomize();
+						idle.add(ant);
+					}
+					return null;
+				}
+			}));
+		
+		try {
+			this.awaitAll(running);
+		} finally {
+			store.synchronizeAll();
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.anti.get(i).setStore(null);
+		}
+		
+		this.iteration = startIteration + finished.get() / this.numberOfAnts;
+		this.isSolved = true;
+		return (Cluster)this.solution.clone();
+	}
+	
+	
+	/**
+	 * Keep the solution of an ant if it is the best one so far.
+	 * @param ant - the ant
+	 * @param iteration - the iteration in which the solution was built
+	 */
+	private synchronized void offer(Ant ant, int iteration) {
+		if(ant.getValue() < this.bestValue) {
+			this.solution.copyFrom(ant.getClustering());
+			this.bestValue = ant.getValue();
+			this.lastImprovement = iteration;
+			this.improved(iteration);
+		}
+	}
+	
+	
+	/**
+	 * Report an improvement of the best solution to the listener and write the solution with the solution writer.
+	 * @param iteration - the iteration in which the solution was found
+	 */
+	private void improved(int iteration) {
+		if(this.listener != null)
+			this.listener.improved(iteration, this.bestValue);
+		if(this.solutionWriter != null) {
+			try {
+				this.solutionWriter.writeSolution(this.solution);
+			} catch (IOException e) {
+				// solving goes on, the caller can check the error
+				this.solutionWriterError = e;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Let the ants work without the barrier at the end of every iteration. It only has an effect
+	 * with more than one thread, see setThreads, and without a controller, see setController.
+	 * @param asynchronous - run the ants asynchronously
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+	
+	
+	/**
+	 * Let every ant build a solution, in parallel if there are worker threads, and collect the solutions in the population.
+	 * @throws CloneNotSupportedException
+	 */
+	private void construct() throws CloneNotSupportedException {
+		if(this.workers == null) {
+			for(int i = 0; i < this.numberOfAnts; i++)
+				this.constructAnt(this.anti.get(i));
+			this.storeAnts();
+			return;
+		}
+		
+		ArrayList<Future<Object>> running = new ArrayList<Future<Object>>();
+		for(int i = 0; i < this.numberOfAnts; i++) {
+			final Ant ant = this.anti.get(i);
+			running.add(this.workers.submit(new Callable<Object>() {
+				public Object call() throws CloneNotSupportedException {
+					AntSystem.this.constructAnt(ant);
+					return null;
+				}
+			}));
+		}
+		this.awaitAll(running);
+		this.storeAnts();
+	}
+	
+	
+	/**
+	 * Wait until every task has finished, even if the thread is interrupted, so no worker touches the ants
+	 * after the return. An interruption asks the workers to stop and is passed on to the caller.
+	 * @param running - the tasks
+	 * @throws CloneNotSupportedException
+	 */
+	private void awaitAll(ArrayList<Future<Object>> running) throws CloneNotSupportedException {
+		boolean interrupted = false;
+		ExecutionException failure = null;
+		for(int i = 0; i < running.size(); i++)
+			while(true) {
+				try {
+					running.get(i).get();
+					break;
+				} catch (InterruptedException e) {
+					// the run ends after the running ants are finished
+					interrupted = true;
+					this.stopRequested = true;
+				} catch (ExecutionException e) {
+					if(failure == null)
+						failure = e;
+					break;
+				}
+			}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		if(failure != null) {
+			if(failure.getCause() instanceof CloneNotSupportedException)
+				throw (CloneNotSupportedException)failure.getCause();
+			throw new RuntimeException(failure.getCause());
+		}
+	}
+	
+	
+	/**
+	 * Collect the goodness of the solutions of the ants in the population, their labels are already there.
+	 */
+	private void storeAnts() {
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.population.store(i, this.anti.get(i).getValue());
+	}
+	
+	
+	/**
+	 * Keep the clusterings of the ants in their rows of the population.
+	 */
+	private void bindAnts() {
+		for(int i = 0; i < this.numberOfAnts; i++)
+			this.population.bind(i, this.anti.get(i).getClustering());
+	}
+	
+	
+	/**
+	 * Let an ant build a solution.
+	 * @param ant - the ant
+	 * @throws CloneNotSupportedException
+	 */
+	private void constructAnt(Ant ant) throws CloneNotSupportedException {
+		if(this.local)
+			ant.createLocalSolutionImproved(this.pheromone);
+		else
+			ant.createSolutionImproved(this.pheromone);
+	}
+	
+	
+	/**
+	 * Estimate the diversity of the solutions of the last iteration by sampling node pairs: for every pair the share
+	 * of the ants disagreeing with the majority on keeping the two nodes together. It does not depend on the labels themselves.
+	 * @return the diversity between 0 (every ant agrees) and 1.
+	 */
+	public double getDiversity() {
+		int ants = this.population.getCount();
+		if(ants < 2 || this.size < 2)
+			return 0.0;
+		int samples = 64;
+		Random sampler = new Random(this.seed ^ this.iteration);
+		int[] labels = this.population.getLabels();
+		double diversity = 0.0;
+		for(int s = 0; s < samples; s++) {
+			int i = sampler.nextInt(this.size), j = sampler.nextInt(this.size);
+			int together = 0;
+			for(int row = 0; row < ants * this.size; row += this.size)
+				if(labels[row + i] == labels[row + j])
+					together++;
+			diversity += 2.0 * Math.min(together, ants - together) / ants;
+		}
+		return diversity / samples;
+	}
+	
+	
+	/**
+	 * Change the number of ants. New ants start from random clusterings with the current settings.
+	 * @param number - the new number of ants
+	 */
+	public void setNumberOfAnts(int number) {
+		while(this.anti.size() > number)
+			this.anti.remove(this.anti.size() - 1);
+		while(this.anti.size() < number) {
+			Ant ant = new Ant(this.size, this.matrix, this.alpha, this.beta, this.generator.nextLong());
+			ant.setCache(this.cache);
+			ant.setSelection(this.stochastic, this.q0);
+			ant.setOrder(this.fixedOrder);
+			ant.randomize(this.generator);
+			this.anti.add(ant);
 		}
+		// the remaining ants copy their rows along if the buffer is replaced
+		this.population.resize(number, this.size);
+		int previous = this.numberOfAnts;
+		this.numberOfAnts = number;
+		this.bindAnts();
+		for(int i = previous; i < number; i++)
+			this.population.store(i, this.anti.get(i).getValue());
+	}
+	
+	
+	/**
+	 * Get the number of ants.
+	 * @return the number of ants.
+	 */
+	public int getNumberOfAnts() {
+		return numberOfAnts;
+	}
+	
+	
+	/**
+	 * Build the solutions of the ants on several threads. The threads are kept until close or the next setThreads.
+	 * @param threads - the number of threads, 1 builds them on the calling thread
+	 */
+	public void setThreads(int threads) {
+		if(this.workers != null)
+			this.workers.shutdown();
+		this.workers = null;
+		this.workerThreads.clear();
+		this.threads = Math.max(threads, 1);
+		if(threads > 1)
+			this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task);
+					thread.setDaemon(true);
+					AntSystem.this.workerThreads.add(thread);
+					return thread;
+				}
+			});
+	}
+	
+	
+	/**
+	 * Get the CPU time used so far by the calling thread and the worker threads.
+	 * @return the CPU time in nanoseconds, or -1 if the virtual machine does not measure it.
+	 */
+	private long getCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean.isThreadCpuTimeSupported()))
+			return -1;
+		if(!(bean.isThreadCpuTimeEnabled()))
+			bean.setThreadCpuTimeEnabled(true);
+		long time = bean.getCurrentThreadCpuTime();
+		synchronized(this.workerThreads) {
+			for(int t = 0; t < this.workerThreads.size(); t++)
+				time += Math.max(bean.getThreadCpuTime(this.workerThreads.get(t).getId()), 0);
+		}
+		return time;
+	}
+	
+	
+	/**
+	 * Stop the worker threads. The Ant System can still be used, it builds the solutions on the calling thread.
+	 */
+	public void close() {
+		this.setThreads(1);
+	}
+	
+	
+	/**
+	 * Report the improvements of the best solution while solving.
+	 * @param listener - the listener, null for none
+	 */
+	public void setListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+	
+	
+	/**
+	 * Write the best solution, its labels and its clusters, every time it improves, and once with the starting
+	 * solution. The writer is neither flushed nor closed by the Ant System.
+	 * @param writer - the writer, null for none
+	 */
+	public void setSolutionWriter(ResultWriter writer) {
+		this.solutionWriter = writer;
+		this.solutionWriterError = null;
+	}
+	
+	
+	/**
+	 * Get the last error of the solution writer.
+	 * @return the error, or null if every solution was written.
+	 */
+	public IOException getSolutionWriterError() {
+		return solutionWriterError;
+	}
+	
+	
+	/**
+	 * Let a controller decide the number of ants and the length of the run instead of the fixed
+	 * number of ants and iterations. It measures the CPU time of the calling thread and of the worker threads,
+	 * see setThreads. The controller adjusts the run between the iterations, so while it is set the ants run
+	 * synchronously even if the asynchronous mode is selected.
+	 * @param controller - the controller, null for the fixed settings
+	 */
+	public void setController(AdaptiveController controller) {
+		this.controller = controller;
+	}
+	
+	
+	/**
+	 * Update pheromone levels with the selected pheromone update.
+	 */
+	public void updatePheromone() {
+		this.update.update(this.pheromone, this.size, this.population, this.solution, this.rho);
+	}
+	
+	
+	/**
+	 * Set the strategy of the pheromone update. The default is the original Ant System update.
+	 * @param update - the pheromone update
+	 */
+	public void setPheromoneUpdate(PheromoneUpdate update) {
+		this.update = update;
 	}
 	
 	
@@ -0,0 +1,13 @@
+public class AntSystemUpdate extends PheromoneUpdate {
+
+	/**
+	 * The original Ant System update: every ant deposits 1 / error on the labels of its solution.
+	 */
+	@Override
+	public void update(double[][] pheromone, int size, Population population, Cluster best, double rho) {
+		this.evaporate(pheromone, size, 1.0 - rho);
+		for(int k = 0; k < population.getCount(); k++)
+			this.deposit(pheromone, population, k, this.amount(population.getValue(k)));
+	}
+
+}
@@ -0,0 +1,119 @@
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class BatchSolver {
+
+	private int threads, numberOfAnts, maxIterations;
+	private double alpha, beta, rho;
+	private boolean local;
+	private ExecutorService executor;
+
+	/*
+	 * One Ant System per worker thread. It is reset for every problem, so its pheromone matrix,
+	 * ants and scratch space grow to the largest problem and are reused afterwards.
+	 */
+	private ThreadLocal<AntSystem> arena = new ThreadLocal<AntSystem>();
+
+
+	/**
+	 * Constructor. Creates a solver for many small problems sharing a pool of worker threads.
+	 * @param threads - number of worker threads
+	 * @param number - number of ants
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations
+	 * @param local - use only the neighbour labels while building the solutions
+	 */
+	public BatchSolver(int threads, int number, double alpha, double beta, double rho, int maxIterations, boolean local) {
+		this.threads = threads;
+		this.numberOfAnts = number;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.rho = rho;
+		this.maxIterations = maxIterations;
+		this.local = local;
+		this.executor = Executors.newFixedThreadPool(threads);
+	}
+
+
+	/**
+	 * Solve a stream of problems. The problems are read lazily and at most two per worker thread are
+	 * in progress at the same time, so the stream may be much longer than what fits in memory.
+	 * The results are returned in the order of the problems.
+	 * @param matrices - the problems
+	 * @return the solutions; next throws a RuntimeException if solving a problem failed.
+	 */
+	public Iterator<Cluster> solve(final Iterator<? extends CorrelationMatrix> matrices) {
+		return new Iterator<Cluster>() {
+			private LinkedList<Future<Cluster>> pending = new LinkedList<Future<Cluster>>();
+
+			public boolean hasNext() {
+				this.fill();
+				return !(this.pending.isEmpty());
+			}
+
+			public Cluster next() {
+				this.fill();
+				if(this.pending.isEmpty())
+					throw new NoSuchElementException();
+				try {
+					return this.pending.removeFirst().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			// keep the workers busy
+			private void fill() {
+				while(this.pending.size() < 2 * BatchSolver.this.threads && matrices.hasNext())
+					this.pending.add(BatchSolver.this.submit(matrices.next()));
+			}
+		};
+	}
+
+
+	/**
+	 * Submit a single problem.
+	 * @param matrix - the problem
+	 * @return the future solution.
+	 */
+	public Future<Cluster> submit(final CorrelationMatrix matrix) {
+		return this.executor.submit(new Callable<Cluster>() {
+			public Cluster call() throws CloneNotSupportedException {
+				AntSystem system = BatchSolver.this.arena.get();
+				if(system == null) {
+					system = new AntSystem(matrix, BatchSolver.this.numberOfAnts, BatchSolver.this.alpha, BatchSolver.this.beta,
+							BatchSolver.this.rho, BatchSolver.this.maxIterations, BatchSolver.this.local);
+					BatchSolver.this.arena.set(system);
+				}
+				else
+					system.reset(matrix);
+				return system.solve();
+			}
+		});
+	}
+
+
+	/**
+	 * Stop the worker threads after the submitted problems are solved.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+}
@@ -0,0 +1,503 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.StringTokenizer;
+
+
+public class Benchmark {
+
+	private int repetitions;
+	private long seed;
+	private int[] threads = {1};
+
+	// the absolute increase of the error and the wall time that compare accepts on top of the tolerance
+	private double errorSlack, wallSlack = 20.0;
+
+	private ArrayList<Instance> instances = new ArrayList<Instance>();
+	private ArrayList<Configuration> configurations = new ArrayList<Configuration>();
+	private ArrayList<Run> runs = new ArrayList<Run>();
+
+
+	/**
+	 * A problem of the suite with the error to reach and, for planted instances, the planted clustering.
+	 */
+	private static class Instance {
+		private String name;
+		private CorrelationMatrix matrix;
+		private Cluster truth;
+		private double target;
+	}
+
+
+	/**
+	 * The parameters of the Ant System.
+	 */
+	private static class Configuration {
+		private String name;
+		private int numberOfAnts, maxIterations;
+		private double alpha, beta, rho;
+		private boolean local, asynchronous;
+		private Seeder seeder;
+	}
+
+
+	/**
+	 * The measurements of one run. The curve holds (milliseconds, error) pairs of the improvements.
+	 * The names identify the run in a baseline, the indices are only valid in this suite.
+	 */
+	private static class Run {
+		private int instance, configuration, threads, repetition;
+		private String instanceName, configurationName;
+		private double value, recovery = -1.0;
+		private long wallMillis, timeToTarget = -1, peakBytes;
+		private ArrayList<double[]> curve = new ArrayList<double[]>();
+		private double speedup, efficiency;
+	}
+
+
+	/**
+	 * Constructor. Creates an empty suite.
+	 * @param repetitions - number of runs of every instance, configuration and thread count
+	 * @param seed - the seed of the first repetition, repetition r uses seed + r
+	 */
+	public Benchmark(int repetitions, long seed) {
+		this.repetitions = repetitions;
+		this.seed = seed;
+	}
+
+
+	/**
+	 * Add an instance to the suite.
+	 * @param name - the name of the instance, without ';' as it identifies the instance in a baseline
+	 * @param matrix - the correlation matrix
+	 * @param truth - the planted clustering, null if it is not known
+	 * @param target - the error counted as reaching the target
+	 */
+	public void addInstance(String name, CorrelationMatrix matrix, Cluster truth, double target) {
+		Instance instance = new Instance();
+		instance.name = name;
+		instance.matrix = matrix;
+		instance.truth = truth;
+		instance.target = target;
+		this.instances.add(instance);
+	}
+
+
+	/**
+	 * Add a planted-partition instance. Its target is the error of the planted clustering.
+	 * @param name - the name of the instance
+	 * @param generator - the configured generator
+	 * @throws InterruptedException
+	 */
+	public void addPlantedInstance(String name, PlantedPartitionGenerator generator) throws InterruptedException {
+		SparseCorrelationMatrix matrix = generator.generate(Runtime.getRuntime().availableProcessors());
+		Cluster truth = generator.getGroundTruth();
+		this.addInstance(name, matrix, truth, truth.computeValue(matrix));
+	}
+
+
+	/**
+	 * Add a configuration of the Ant System.
+	 * @param name - the name of the configuration, without ';' as it identifies the configuration in a baseline
+	 * @param number - number of ants
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations
+	 * @param local - use only the neighbour labels while building the solutions
+	 * @param asynchronous - run the ants without the barrier of the iterations
+	 */
+	public void addConfiguration(String name, int number, double alpha, double beta, double rho, int maxIterations, boolean local, boolean asynchronous) {
+		Configuration configuration = new Configuration();
+		configuration.name = name;
+		configuration.numberOfAnts = number;
+		configuration.alpha = alpha;
+		configuration.beta = beta;
+		configuration.rho = rho;
+		configuration.maxIterations = maxIterations;
+		configuration.local = local;
+		configuration.asynchronous = asynchronous;
+		this.configurations.add(configuration);
+	}
+
+
+	/**
+	 * Start the runs of the configuration added last from the clusterings of a seeder.
+	 * @param seeder - the seeder, null for a random start
+	 */
+	public void setSeeder(Seeder seeder) {
+		this.configurations.get(this.configurations.size() - 1).seeder = seeder;
+	}
+
+
+	/**
+	 * Set the thread counts to run every configuration with. The smallest one is the base of the speedup.
+	 * @param threads - the thread counts
+	 */
+	public void setThreads(int... threads) {
+		int[] sorted = threads.clone();
+		Arrays.sort(sorted);
+		// every thread count once
+		int count = 0;
+		for(int k = 0; k < sorted.length; k++)
+			if(k == 0 || sorted[k] != sorted[k - 1])
+				sorted[count++] = sorted[k];
+		this.threads = Arrays.copyOf(sorted, count);
+	}
+
+
+	/**
+	 * Set the absolute increase that compare accepts on top of the relative tolerance. It keeps short
+	 * runs, where a few milliseconds are a large share, from failing on noise.
+	 * @param error - the accepted increase of the median error
+	 * @param wallMillis - the accepted increase of the minimum wall time in milliseconds
+	 */
+	public void setSlack(double error, double wallMillis) {
+		this.errorSlack = error;
+		this.wallSlack = wallMillis;
+	}
+
+
+	/**
+	 * Run the suite: every instance with every configuration, thread count and repetition. Every instance
+	 * and configuration is run once unmeasured first, so the first repetition does not pay for the compilation.
+	 * The asynchronous configurations are only run on more than 1 thread, see firstThreads.
+	 * @throws CloneNotSupportedException
+	 */
+	public void run() throws CloneNotSupportedException {
+		this.runs.clear();
+		for(int i = 0; i < this.instances.size(); i++)
+			for(int c = 0; c < this.configurations.size(); c++) {
+				int first = this.firstThreads(this.configurations.get(c));
+				if(first == -1)
+					continue;
+				this.runOnce(i, c, first, -1);
+				for(int t = 0; t < this.threads.length; t++)
+					if(this.threads[t] >= first)
+						for(int r = 0; r < this.repetitions; r++)
+							this.runs.add(this.runOnce(i, c, this.threads[t], r));
+			}
+		this.computeSpeedup();
+	}
+
+
+	/**
+	 * Get the smallest thread count a configuration is run with. The asynchronous mode needs worker threads,
+	 * on a single thread the Ant System would silently run the synchronous iterations instead.
+	 * @param configuration - the configuration
+	 * @return the thread count, or -1 if the configuration is not run at all.
+	 */
+	private int firstThreads(Configuration configuration) {
+		for(int t = 0; t < this.threads.length; t++)
+			if(!(configuration.asynchronous) || this.threads[t] > 1)
+				return this.threads[t];
+		return -1;
+	}
+
+
+	/**
+	 * Solve an instance once and measure it.
+	 */
+	private Run runOnce(int i, int c, int threads, int repetition) throws CloneNotSupportedException {
+		Instance instance = this.instances.get(i);
+		Configuration configuration = this.configurations.get(c);
+		final Run run = new Run();
+		run.instance = i;
+		run.configuration = c;
+		run.instanceName = instance.name;
+		run.configurationName = configuration.name;
+		run.threads = threads;
+		run.repetition = repetition;
+
+		AntSystem system = new AntSystem(instance.matrix, configuration.numberOfAnts, configuration.alpha, configuration.beta,
+				configuration.rho, configuration.maxIterations, configuration.local);
+		system.setSeed(this.seed + repetition);
+		system.setThreads(threads);
+		system.setAsynchronous(configuration.asynchronous);
+		system.setSeeder(configuration.seeder, 1.0);
+
+		// the heap is measured from a clean state
+		System.gc();
+		List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+		for(int k = 0; k < pools.size(); k++)
+			pools.get(k).resetPeakUsage();
+
+		final long start = System.nanoTime();
+		system.setListener(new ProgressListener() {
+			public void improved(int iteration, double value) {
+				run.curve.add(new double[] {(System.nanoTime() - start) / 1000000.0, value});
+			}
+		});
+		Cluster solution;
+		try {
+			solution = system.solve();
+			run.wallMillis = (System.nanoTime() - start) / 1000000L;
+		} finally {
+			system.close();
+		}
+
+		for(int k = 0; k < pools.size(); k++)
+			if(pools.get(k).getType() == MemoryType.HEAP)
+				run.peakBytes += pools.get(k).getPeakUsage().getUsed();
+		run.value = solution.getValue();
+		for(int k = 0; k < run.curve.size() && run.timeToTarget == -1; k++)
+			if(run.curve.get(k)[1] <= instance.target)
+				run.timeToTarget = Math.round(run.curve.get(k)[0]);
+		if(instance.truth != null)
+			run.recovery = randIndex(solution, instance.truth);
+		return run;
+	}
+
+
+	/**
+	 * Compare the median wall time of every thread count with the smallest thread count the same
+	 * instance and configuration was run with.
+	 */
+	private void computeSpeedup() {
+		HashMap<String, double[]> summaries = summarize(this.runs);
+		for(int k = 0; k < this.runs.size(); k++) {
+			Run run = this.runs.get(k);
+			int first = this.firstThreads(this.configurations.get(run.configuration));
+			double base = summaries.get(run.instanceName + ";" + run.configurationName + ";" + first)[2];
+			double own = summaries.get(key(run))[2];
+			run.speedup = own > 0 ? base / own : 1.0;
+			run.efficiency = run.speedup * first / run.threads;
+		}
+	}
+
+
+	/**
+	 * Summarize the repetitions by instance, configuration and thread count: the median error, the minimum
+	 * wall time and the median wall time. The minimum is the least disturbed by other load on the machine.
+	 */
+	private static HashMap<String, double[]> summarize(List<Run> runs) {
+		HashMap<String, ArrayList<Run>> groups = new HashMap<String, ArrayList<Run>>();
+		for(int k = 0; k < runs.size(); k++) {
+			ArrayList<Run> group = groups.get(key(runs.get(k)));
+			if(group == null)
+				groups.put(key(runs.get(k)), group = new ArrayList<Run>());
+			group.add(runs.get(k));
+		}
+		HashMap<String, double[]> summaries = new HashMap<String, double[]>();
+		for(String key : groups.keySet()) {
+			ArrayList<Run> group = groups.get(key);
+			double[] errors = new double[group.size()], walls = new double[group.size()];
+			for(int k = 0; k < group.size(); k++) {
+				errors[k] = group.get(k).value;
+				walls[k] = group.get(k).wallMillis;
+			}
+			Arrays.sort(errors);
+			Arrays.sort(walls);
+			summaries.put(key, new double[] {median(errors), walls[0], median(walls)});
+		}
+		return summaries;
+	}
+
+
+	private static double median(double[] sorted) {
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+
+
+	private static String key(Run run) {
+		return run.instanceName + ";" + run.configurationName + ";" + run.threads;
+	}
+
+
+	/**
+	 * The Rand index of two clusterings: the share of the node pairs on which they agree about being
+	 * in the same cluster. The pairs are counted from the cluster sizes, so it runs in O(n log n).
+	 * @param a - the first clustering
+	 * @param b - the second clustering
+	 * @return the Rand index between 0 and 1.
+	 */
+	public static double randIndex(Cluster a, Cluster b) {
+		int size = a.getSize();
+		if(size < 2)
+			return 1.0;
+		long[] pairs = new long[size];
+		for(int i = 0; i < size; i++)
+			pairs[i] = ((long)a.getElement(i) << 32) | b.getElement(i);
+		Arrays.sort(pairs);
+
+		// pairs together in both, and in each of the clusterings
+		double both = 0.0;
+		for(int i = 0, j; i < size; i = j) {
+			for(j = i; j < size && pairs[j] == pairs[i]; j++);
+			both += (double)(j - i) * (j - i - 1) / 2;
+		}
+		double inA = 0.0, inB = 0.0;
+		for(int label = 0; label < size; label++) {
+			inA += (double)a.getLabelCount(label) * (a.getLabelCount(label) - 1) / 2;
+			inB += (double)b.getLabelCount(label) * (b.getLabelCount(label) - 1) / 2;
+		}
+		double all = (double)size * (size - 1) / 2;
+		return 1.0 - (inA + inB - 2 * both) / all;
+	}
+
+
+	/**
+	 * Write one line per run: instance, configuration, threads, repetition, error, target, time to target
+	 * (-1 if not reached), wall time, peak heap, speedup, efficiency and recovery (-1 without a planted clustering).
+	 * The instances and configurations are written by name, the counts and times as integers.
+	 * @param filename - the output file
+	 * @throws IOException
+	 */
+	public void writeSummary(String filename) throws IOException {
+		TextResultWriter out = new TextResultWriter(new FileOutputStream(filename), 4);
+		try {
+			this.writeNotes(out);
+			out.writeHeader("instance", "configuration", "threads", "repetition", "error", "target", "ttt_ms", "wall_ms",
+					"peak_bytes", "speedup", "efficiency", "recovery");
+			for(int k = 0; k < this.runs.size(); k++) {
+				Run run = this.runs.get(k);
+				out.writeRow(run.instanceName, run.configurationName, run.threads, run.repetition, run.value,
+						this.instances.get(run.instance).target, run.timeToTarget, run.wallMillis, run.peakBytes,
+						run.speedup, run.efficiency, run.recovery);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Write the anytime curves: one line per improvement with the run and the (milliseconds, error) point.
+	 * @param filename - the output file
+	 * @throws IOException
+	 */
+	public void writeCurves(String filename) throws IOException {
+		TextResultWriter out = new TextResultWriter(new FileOutputStream(filename), 4);
+		try {
+			this.writeNotes(out);
+			out.writeHeader("instance", "configuration", "threads", "repetition", "ms", "error");
+			for(int k = 0; k < this.runs.size(); k++) {
+				Run run = this.runs.get(k);
+				for(int p = 0; p < run.curve.size(); p++)
+					out.writeRow(run.instanceName, run.configurationName, run.threads, run.repetition, run.curve.get(p)[0], run.curve.get(p)[1]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Write the sizes of the instances and the thread counts the asynchronous configurations were left out of.
+	 */
+	private void writeNotes(TextResultWriter out) throws IOException {
+		for(int i = 0; i < this.instances.size(); i++)
+			out.writeComment("instance " + this.instances.get(i).name + ", size " + this.instances.get(i).matrix.getSize());
+		for(int c = 0; c < this.configurations.size(); c++) {
+			Configuration configuration = this.configurations.get(c);
+			if(configuration.asynchronous && this.threads[0] == 1)
+				out.writeComment("configuration " + configuration.name + " is asynchronous, it is not run on 1 thread"
+						+ (this.firstThreads(configuration) == -1 ? " and so not at all" : ""));
+		}
+	}
+
+
+	/**
+	 * Compare the runs with a summary written earlier by writeSummary. The runs are matched by the names of
+	 * the instance and the configuration and by the thread count, runs without a match are skipped. The median
+	 * error and the minimum wall time of the repetitions are compared, each may grow by its relative tolerance
+	 * plus the absolute slack set by setSlack.
+	 * @param baseline - the summary file of the baseline
+	 * @param errorTolerance - the accepted relative increase of the error
+	 * @param wallTolerance - the accepted relative increase of the wall time
+	 * @return a line for every instance, configuration and thread count that got worse than the tolerance.
+	 * @throws IOException
+	 */
+	public ArrayList<String> compare(String baseline, double errorTolerance, double wallTolerance) throws IOException {
+		ArrayList<Run> old = new ArrayList<Run>();
+		BufferedReader in = new BufferedReader(new FileReader(baseline));
+		try {
+			String line;
+			boolean header = true;
+			while((line = in.readLine()) != null) {
+				if(line.length() == 0 || line.charAt(0) == '#')
+					continue;
+				// the first other line names the columns
+				if(header) {
+					header = false;
+					continue;
+				}
+				StringTokenizer tokens = new StringTokenizer(line, ";");
+				Run run = new Run();
+				run.instanceName = tokens.nextToken();
+				run.configurationName = tokens.nextToken();
+				run.threads = Integer.parseInt(tokens.nextToken());
+				run.repetition = Integer.parseInt(tokens.nextToken());
+				run.value = Double.parseDouble(tokens.nextToken());
+				tokens.nextToken();
+				tokens.nextToken();
+				run.wallMillis = Long.parseLong(tokens.nextToken());
+				old.add(run);
+			}
+		} finally {
+			in.close();
+		}
+
+		HashMap<String, double[]> before = summarize(old), after = summarize(this.runs);
+		ArrayList<String> regressions = new ArrayList<String>();
+		for(String key : after.keySet()) {
+			double[] was = before.get(key), is = after.get(key);
+			if(was == null)
+				continue;
+			if(is[0] > was[0] * (1.0 + errorTolerance) + this.errorSlack + 1e-9)
+				regressions.add(key + ": median error " + was[0] + " -> " + is[0]);
+			if(is[1] > was[1] * (1.0 + wallTolerance) + this.wallSlack)
+				regressions.add(key + ": minimum wall ms " + was[1] + " -> " + is[1]);
+		}
+		return regressions;
+	}
+
+
+	/**
+	 * Run the default suite: planted instances of two sizes with the local construction, synchronous and
+	 * asynchronous, and with the full construction, on one thread and on every core. Every configuration starts
+	 * from the merge seeder: without it the ants stop far above the error of the planted clustering whatever
+	 * the number of iterations, with it every configuration reaches that error on these low-noise instances.
+	 * @param args - the summary file, the curves file and optionally the baseline summary to compare with
+	 */
+	public static void main(String[] args) throws Exception {
+		Benchmark benchmark = new Benchmark(5, 1);
+		int[] sizes = {100, 300};
+		for(int k = 0; k < sizes.length; k++) {
+			PlantedPartitionGenerator generator = new PlantedPartitionGenerator(sizes[k], sizes[k] / 20, 42 + k);
+			generator.setDegrees(sizes[k] / 4.0, 2.5);
+			generator.setMixing(0.04);
+			generator.setNoise(0.02, 0.02);
+			benchmark.addPlantedInstance("planted-" + sizes[k], generator);
+		}
+		benchmark.addConfiguration("local-merge", 8, 1.0, 1.0, 0.5, 20, true, false);
+		benchmark.setSeeder(new MergeSeeder());
+		benchmark.addConfiguration("local-merge-async", 8, 1.0, 1.0, 0.5, 20, true, true);
+		benchmark.setSeeder(new MergeSeeder());
+		benchmark.addConfiguration("full-merge", 8, 1.0, 1.0, 0.5, 5, false, false);
+		benchmark.setSeeder(new MergeSeeder());
+		benchmark.setThreads(1, Runtime.getRuntime().availableProcessors());
+		benchmark.run();
+
+		benchmark.writeSummary(args.length > 0 ? args[0] : "benchmark.csv");
+		benchmark.writeCurves(args.length > 1 ? args[1] : "curves.csv");
+		if(args.length > 2) {
+			// even the minimum wall times differ by a few tens of percent between JVM processes
+			ArrayList<String> regressions = benchmark.compare(args[2], 0.05, 0.5);
+			for(int k = 0; k < regressions.size(); k++)
+				System.out.println("Regression " + regressions.get(k));
+			if(!(regressions.isEmpty()))
+				System.exit(1);
+		}
+	}
+
+}
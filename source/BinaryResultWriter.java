@@ -0,0 +1,104 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class BinaryResultWriter extends ResultWriter {
+
+	// record types
+	public static final int SOLUTION = 1;
+	public static final int DELTA_SOLUTION = 2;
+	public static final int STATISTICS = 3;
+
+	protected DataOutputStream out;
+	private int[] start = new int[1];
+
+
+	/**
+	 * Constructor. Creates a writer producing compact binary records. Every record starts with its type;
+	 * the integers are written as variable length numbers, 7 bits per byte.
+	 * @param out - the output stream
+	 */
+	public BinaryResultWriter(OutputStream out) {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+	}
+
+
+	/**
+	 * Write the solution as: SOLUTION, size, value, the labels, then for every non-empty cluster its size
+	 * followed by the gaps between its ascending members, closed by a 0 size.
+	 */
+	@Override
+	public void writeSolution(Cluster solution) throws IOException {
+		int size = solution.getSize();
+		int[] labels = labelsOf(solution);
+
+		this.out.write(SOLUTION);
+		this.writeVarInt(size);
+		this.out.writeDouble(solution.getValue());
+		for(int i = 0; i < size; i++)
+			this.writeVarInt(labels[i]);
+		this.writeMembers(labels, size);
+	}
+
+
+	/**
+	 * Write the members of the clusters.
+	 */
+	protected void writeMembers(int[] labels, int size) throws IOException {
+		if(this.start.length < size + 1)
+			this.start = new int[size + 1];
+		int[] members = groupMembers(labels, size, this.start);
+		for(int c = 0; c < size; c++) {
+			if(this.start[c] == this.start[c + 1])
+				continue;
+			this.writeVarInt(this.start[c + 1] - this.start[c]);
+			int previous = 0;
+			for(int k = this.start[c]; k < this.start[c + 1]; k++) {
+				this.writeVarInt(members[k] - previous);
+				previous = members[k];
+			}
+		}
+		this.writeVarInt(0);
+	}
+
+
+	/**
+	 * Write the statistics as: STATISTICS, the number of values, the values.
+	 */
+	@Override
+	public void writeStatistics(double... values) throws IOException {
+		this.out.write(STATISTICS);
+		this.writeVarInt(values.length);
+		for(int i = 0; i < values.length; i++)
+			this.out.writeDouble(values[i]);
+	}
+
+
+	/**
+	 * Write a non-negative integer with 7 bits per byte, the highest bit telling if more bytes follow.
+	 * @param value - the value
+	 * @throws IOException
+	 */
+	protected void writeVarInt(int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			this.out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.out.write(value);
+	}
+
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+}
@@ -1,14 +1,25 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
 
 
 public class Cluster {
 
-	// the clustering
+	// the clustering, the labels are at offset .. offset + size - 1
 	private int[] clustering;
+	private int offset;
+	// the labels are stored in an array shared with other clusterings, see setStorage
+	private boolean shared;
 	// size of the problem
 	private int size;
 	// the goodness of the clustering
 	private double value;
+	// rolling hash of the labels, see getHash
+	private long hash;
+	// index of the labels in use: the number of elements with each label, and the set of used labels
+	private int[] counts;
+	private BitSet used = new BitSet();
 	
 	// indicator variables
 	private boolean uniform;
@@ -25,16 +36,26 @@ public class Cluster {
 		this.size = size;
 		this.uniform = false;
 		this.computed = false;
+		this.computeIndex();
 	}
 
 	
 	/**
-	 * Get the clustering. 
+	 * Get the clustering. The labels start at getOffset, which is 0 unless the labels are stored in a shared array.
 	 * @return clustering.
 	 */
 	public int[] getClustering() {
 		return clustering;
 	}
+	
+	
+	/**
+	 * Get the position of the first label in the array of getClustering.
+	 * @return the offset.
+	 */
+	public int getOffset() {
+		return offset;
+	}
 
 	
 	/**
@@ -42,9 +63,27 @@ public class Cluster {
 	 * @param clustering - the new value.
 	 */
 	public void setClustering(int[] clustering) {
-		this.clustering = clustering.clone();
+		if(this.shared)
+			System.arraycopy(clustering, 0, this.clustering, this.offset, this.size);
+		else
+			this.clustering = clustering.clone();
 		this.uniform = false;
 		this.computed = false;
+		this.computeIndex();
+	}
+	
+	
+	/**
+	 * Keep the labels in a part of a larger array, e.g. in the population buffer of the ants. The labels are not
+	 * copied: the caller either keeps the content of the new place equal to the clustering or sets the clustering
+	 * afterwards, e.g. with resize or generateRandomly.
+	 * @param labels - the array
+	 * @param offset - the position of the first label, the array has room for size labels from there
+	 */
+	public void setStorage(int[] labels, int offset) {
+		this.clustering = labels;
+		this.offset = offset;
+		this.shared = true;
 	}
 	
 	
@@ -54,7 +93,7 @@ public class Cluster {
 	 * @return the value on the specified position.
 	 */
 	public int getElement(int element){
-		return this.clustering[element];
+		return this.clustering[this.offset + element];
 	}
 	
 	
@@ -64,12 +103,145 @@ public class Cluster {
 	 * @param newLabel - the new value.
 	 */
 	public void modifyClustering(int position, int newLabel) {
-		this.clustering[position] = newLabel;
+		this.relabel(position, newLabel);
 		this.uniform = false;
 		this.computed = false;
 	}
 
 	
+	/**
+	 * Make this clustering a copy of another one without allocating, if the capacity is large enough.
+	 * @param other - the clustering to copy
+	 */
+	public void copyFrom(Cluster other) {
+		this.reserve(other.size);
+		System.arraycopy(other.clustering, other.offset, this.clustering, this.offset, other.size);
+		if(this.counts == null || this.counts.length < other.counts.length)
+			this.counts = new int[other.counts.length];
+		System.arraycopy(other.counts, 0, this.counts, 0, other.counts.length);
+		Arrays.fill(this.counts, other.counts.length, this.counts.length, 0);
+		this.used.clear();
+		this.used.or(other.used);
+		this.size = other.size;
+		this.value = other.value;
+		this.hash = other.hash;
+		this.uniform = other.uniform;
+		this.computed = other.computed;
+	}
+	
+	
+	/**
+	 * Make this clustering a copy of labels stored in a larger array, without allocating if the capacity is large enough.
+	 * @param labels - the array holding the labels
+	 * @param offset - the position of the first label
+	 * @param size - the number of labels
+	 */
+	public void copyFrom(int[] labels, int offset, int size) {
+		this.reserve(size);
+		System.arraycopy(labels, offset, this.clustering, this.offset, size);
+		this.size = size;
+		this.uniform = false;
+		this.computed = false;
+		this.computeIndex();
+	}
+	
+	
+	/**
+	 * Reuse the clustering for a problem of a different size. The label array is only reallocated
+	 * if it is too small, and every element gets its own label like in a new clustering.
+	 * @param size - the new size of the problem
+	 */
+	public void resize(int size) {
+		this.reserve(size);
+		this.size = size;
+		for(int i = 0; i < size; i++)
+			this.clustering[this.offset + i] = i;
+		this.uniform = false;
+		this.computed = false;
+		this.computeIndex();
+	}
+	
+	
+	/**
+	 * Make room for a number of labels. A clustering whose storage is too small gets its own array.
+	 * @param size - the number of labels
+	 */
+	private void reserve(int size) {
+		if(this.offset + size > this.clustering.length) {
+			this.clustering = new int[size];
+			this.offset = 0;
+			this.shared = false;
+		}
+	}
+	
+	
+	/**
+	 * Get the rolling hash of the labels. It is kept up to date by every modification in constant time,
+	 * and equal clusterings have equal hashes once their labels are uniform.
+	 * @return the hash.
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	
+	/**
+	 * Recompute the hash and the label index from scratch.
+	 */
+	private void computeIndex() {
+		this.hash = 0;
+		if(this.counts == null || this.counts.length < this.size)
+			this.counts = new int[this.size];
+		else
+			Arrays.fill(this.counts, 0);
+		this.used.clear();
+		for(int i = 0; i < this.size; i++) {
+			this.hash += mix(i, this.clustering[this.offset + i]);
+			this.count(this.clustering[this.offset + i]);
+		}
+	}
+	
+	
+	/**
+	 * Add an element to the count of a label.
+	 */
+	private void count(int label) {
+		if(label >= this.counts.length)
+			this.counts = Arrays.copyOf(this.counts, Math.max(label + 1, 2 * this.counts.length));
+		if(this.counts[label]++ == 0)
+			this.used.set(label);
+	}
+	
+	
+	/**
+	 * Change the label at a position and keep the hash and the label index up to date.
+	 * @param position - the position in the clustering
+	 * @param label - the new label
+	 */
+	private void relabel(int position, int label) {
+		int old = this.clustering[this.offset + position];
+		this.hash += mix(position, label) - mix(position, old);
+		if(--this.counts[old] == 0)
+			this.used.clear(old);
+		this.count(label);
+		this.clustering[this.offset + position] = label;
+	}
+	
+	
+	/**
+	 * Scramble a position and its label into the term of the hash.
+	 * @param position - the position in the clustering
+	 * @param label - the label at the position
+	 * @return the term of the hash.
+	 */
+	private static long mix(int position, int label) {
+		long x = ((long)position << 32) + label + 0x9E3779B97F4A7C15L;
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+	
+	
 	/**
 	 * Get the size of the clustering.
 	 * @return size.
@@ -131,117 +303,57 @@ public class Cluster {
 	
 	
 	/**
-	 * Get the neighbour elements.
+	 * Get the neighbour labels of an element: the closest labels in use below and above its own label,
+	 * wrapping around from the smallest to the largest label. The labels in use are indexed, so a query
+	 * does not depend on the size of the problem.
 	 * @param element - the index of the element of which we compute the neighbours
-	 * @return the neighbours including the element itself [left neighbour, element, right neighbour]
+	 * @param numberOfNeighbours - 3 or 5, the number of returned labels
+	 * @return the neighbours including the element itself [left neighbour, element, right neighbour],
+	 * or two neighbours on each side if 5 labels are requested.
 	 */
 	public int[] getNeighbourElements(int element, int numberOfNeighbours) {
-		int[] neighbours;
-		if(numberOfNeighbours == 3) {	
-			neighbours = new int[3];
-			neighbours[0] = neighbours[2] = -1; neighbours[1] = this.clustering[element];
-			int max = 0;
-			int min = this.size + 1;
-	 		for(int i = 0; i < this.size; i++) {
-	 			// get the max and min values
-	 			if(clustering[i] > max)
-	 				max = this.clustering[i];
-	 			if(clustering[i] < min)
-	 				min = this.clustering[i];
-	 			
-	 			/* get the initial neighbours:
-	 			 * if the neighbour's value is still -1,
-	 			 * set it to the first appropriate value
-	 			 */
-	 			if(neighbours[0] == -1 && this.clustering[i] < this.clustering[element])
-	 				neighbours[0] = this.clustering[i];
-	 			if(neighbours[2] == -1 && this.clustering[i] > this.clustering[element])
-	 				neighbours[2] = this.clustering[i];
-	 			
-	 			/* search for the smallest element which is greater than the selected element 
-	 			 * and for the greatest element which is smaller than the selected element
-	 			 */
-	 			if(this.clustering[i] < this.clustering[element] && this.clustering[i] > neighbours[0])
-	 				neighbours[0] = clustering[i];
-	 			if(this.clustering[i] > this.clustering[element] && this.clustering[i] < neighbours[2])
-	 				neighbours[2] = clustering[i];
-	 		}
-	 		
-	 		/* If the values still not appropriate, set it to min/max value.
-	 		 */
-	 		if(neighbours[0] == -1)
-	 			neighbours[0] = max;
-	 		if(neighbours[2] == -1)
-	 			neighbours[2] = min;
-		}	
-		else {
-			neighbours = new int[5]; 
-			neighbours[0] =	neighbours[1] = neighbours[3] = neighbours[4] =-1; neighbours[2] = this.clustering[element];
-			int dummy, max = 0, max2 = 0, min = this.size + 1, min2 = this.size + 1;
-	 		for(int i = 0; i < this.size; i++) {
-	 			
-	 			// get the max, 2nd max, min and 2nd min values
-	 			if(clustering[i] > max2)
-	 				max2 = this.clustering[i];
-	 			if(max < max2) {
-	 				dummy = max2;
-	 				max2 = max;
-	 				max = dummy;
-	 			}
-	 				
-	 			if(clustering[i] < min2)
-	 				min2 = this.clustering[i];
-	 			if(min > min2) {
-	 				dummy = min2;
-	 				min2 = min;
-	 				min = dummy;
-	 			}
-	 			
-	 			/* get the initial neighbours:
-	 			 * if the neighbour's value is still -1,
-	 			 * set it to the first appropriate value
-	 			 */
-	 			if(neighbours[1] == -1 && this.clustering[i] < this.clustering[element])
-	 				neighbours[1] = this.clustering[i];
-	 			if(neighbours[0] == -1 && this.clustering[i] < this.clustering[element] && this.clustering[i] < neighbours[1])
-	 				neighbours[0] = this.clustering[i];
-	 			
-	 			if(neighbours[3] == -1 && this.clustering[i] > this.clustering[element])
-	 				neighbours[3] = this.clustering[i];
-	 			if(neighbours[4] == -1 && this.clustering[i] > this.clustering[element] && this.clustering[i] > neighbours[3])
-	 				neighbours[4] = this.clustering[i];
-	 			
-	 			/* search for the smallest element which is greater than the selected element 
-	 			 * and for the greatest element which is smaller than the selected element
-	 			 */
-	 			if(this.clustering[i] < this.clustering[element] && this.clustering[i] > neighbours[1]) {
-	 				neighbours[0] = neighbours[1];
-	 				neighbours[1] = clustering[i];
-	 			}
-	 			if(this.clustering[i] > this.clustering[element] && this.clustering[i] < neighbours[3]) {
-	 				neighbours[4] = neighbours[3];
-	 				neighbours[3] = clustering[i];
-	 			}
-	 		}
-	 		
-	 		/* If the values still not appropriate, set it to min/max value.
-	 		 */
-	 		if(neighbours[0] == -1 && neighbours[1] == -1) {
-	 			neighbours[0] = max2;
-	 			neighbours[1] = max;
-	 		}
-	 		else if(neighbours[0] == -1)
-	 			neighbours[0] = max;
-	 		
-	 		if(neighbours[3] == -1 && neighbours[4] == -1) {
-	 			neighbours[3] = min;
-	 			neighbours[4] = min2;
-	 		}
-	 		else if(neighbours[4] == -1)
-	 			neighbours[4] = max;
-		}
-		
-		return neighbours;
+		int label = this.clustering[this.offset + element];
+		int lower = this.previousLabel(label), upper = this.nextLabel(label);
+		if(numberOfNeighbours == 3)
+			return new int[] {lower, label, upper};
+		return new int[] {this.previousLabel(lower), lower, label, upper, this.nextLabel(upper)};
+	}
+	
+	
+	/**
+	 * The largest label in use below the given one, or the largest label if there is none below.
+	 */
+	private int previousLabel(int label) {
+		int previous = this.used.previousSetBit(label - 1);
+		return previous == -1 ? this.used.length() - 1 : previous;
+	}
+	
+	
+	/**
+	 * The smallest label in use above the given one, or the smallest label if there is none above.
+	 */
+	private int nextLabel(int label) {
+		int next = this.used.nextSetBit(label + 1);
+		return next == -1 ? this.used.nextSetBit(0) : next;
+	}
+	
+	
+	/**
+	 * Get the number of elements with a label.
+	 * @param label - the label
+	 * @return the size of the cluster with the label.
+	 */
+	public int getLabelCount(int label) {
+		return label < this.counts.length ? this.counts[label] : 0;
+	}
+	
+	
+	/**
+	 * Get the number of labels in use.
+	 * @return the number of clusters.
+	 */
+	public int getNumberOfLabels() {
+		return this.used.cardinality();
 	}
 	
 	
@@ -250,31 +362,11 @@ public class Cluster {
 	 * @return the size of the largest cluster
 	 */
 	public int getLargestClusterSize() {
-		// make sure that the labels are uniform 
-		if(!(this.uniform))
-			this.makeUniform();
-		
-		
-		// get the number of the different labels
-		int numberOfLabels = 0;
-		for(int i = 0; i < this.size; i++)
-			if(this.clustering[i] > numberOfLabels)
-				numberOfLabels = this.clustering[i];
-		
+		// the sizes of the clusters are counted in the label index
 		int largestSize = 0;
-		int counter;
-		
-		// check all of the different labels
-		for(int i = 0; i <= numberOfLabels; i++) {
-			// count their size
-			counter = 0;
-			for(int j = 0; j < this.size; j++)
-				if(this.clustering[j] == i)
-					counter++;
-			// select the largest
-			if(counter > largestSize)
-				largestSize = counter;
-		}
+		for(int label = this.used.nextSetBit(0); label >= 0; label = this.used.nextSetBit(label + 1))
+			if(this.counts[label] > largestSize)
+				largestSize = this.counts[label];
 		
 		return largestSize;
 	}
@@ -284,11 +376,20 @@ public class Cluster {
 	 * Generate a random clustering.
 	 */
 	public void generateRandomly() {
+		this.generateRandomly(new Random());
+	}
+	
+	
+	/**
+	 * Generate a random clustering with the given random number generator.
+	 * @param generator - the random number generator
+	 */
+	public void generateRandomly(Random generator) {
 		this.uniform = false;
 		this.computed = false;
-		Random generator = new Random();
 		for(int i = 0; i < this.size; i++)
-			this.clustering[i] = generator.nextInt(this.size);
+			this.clustering[this.offset + i] = generator.nextInt(this.size);
+		this.computeIndex();
 	}
 	
 	
@@ -313,15 +414,15 @@ public class Cluster {
 				// if the actual label has not been changed
 				if(changed[i] == 0) {
 					// save the actual label
-					actLabel = this.clustering[i];
+					actLabel = this.clustering[this.offset + i];
 					// search through all of the labels
 					for(int j = 0; j < this.size; j++)
 						/* if the inspected label is the same as the actual label and
 						 * it has not been changed,
 						 */
-						if((this.clustering[j] == actLabel) && (changed[j] == 0)) {
+						if((this.clustering[this.offset + j] == actLabel) && (changed[j] == 0)) {
 							// change the label, and set the label to changed.
-							this.clustering[j] = newLabel;
+							this.clustering[this.offset + j] = newLabel;
 							changed[j] = 1;
 						}
 					// create a new label
@@ -330,6 +431,7 @@ public class Cluster {
 			}
 			
 			this.uniform = true;
+			this.computeIndex();
 		}
 	}
 	
@@ -341,26 +443,8 @@ public class Cluster {
 	 */
 	public double computeValue(CorrelationMatrix matrix) {
 		if(!(this.computed)) {
-			double value = 0.0;
-			
-			for(int i = 0; i < this.size; i++)
-				for(int j = i; j < this.size; j++) {
-					// if they are in the same cluster
-					if(this.clustering[i] == this.clustering[j]) {
-						// and the connection between them is negative,
-						if(matrix.getCorrelationMatrix()[i][j] == -1)
-							// increase error
-							value++;
-					}
-					// if they are not in the same cluster, but the connection
-					// between them is positive,
-					else if(matrix.getCorrelationMatrix()[i][j] == 1)
-						// increase error
-						value++;
-				}
-			
-			// store the new value
-			this.value = value;
+			// the matrix sums the errors in its own storage
+			this.value = matrix.computeError(this.clustering, this.offset, this.size);
 			this.computed = true;
 		}
 		
@@ -377,29 +461,15 @@ public class Cluster {
 	 */
 	public double modifyClusteringAndComputeValue(int pos, int newValue, CorrelationMatrix matrix) {
 		// if the error of the clustering is already computed,
-		// remove the error values connected to the selected position
-		if(this.computed && this.clustering[pos] == newValue)
+		// only the errors of the edges of the selected position change
+		if(this.computed && this.clustering[this.offset + pos] == newValue)
 			return this.value;
 		if(this.computed) {
-			for(int i = 0; i < this.size; i++) {
-				// decrease error for the selected component
-				if(this.clustering[pos] == this.clustering[i] && matrix.getCorrelationMatrix()[pos][i] == -1)
-					this.value--;
-				else if(this.clustering[pos] != this.clustering[i] && matrix.getCorrelationMatrix()[pos][i] == 1)
-					this.value--;
-				
-				// increase error connected to the new value
-				if(this.clustering[i] == newValue && matrix.getCorrelationMatrix()[pos][i] == -1)
-					this.value++;
-				else if(this.clustering[i] != newValue && matrix.getCorrelationMatrix()[pos][i] == 1)
-					this.value++;
-			}
-			// change the clustering label to the new value
-			this.clustering[pos] = newValue;
-			this.computed = true;
+			this.value += matrix.moveDelta(this.clustering, this.offset, this.size, pos, newValue);
+			this.relabel(pos, newValue);
 		}
 		else {
-			this.clustering[pos] = newValue;
+			this.relabel(pos, newValue);
 			this.computeValue(matrix);
 		}
 		
@@ -407,13 +477,79 @@ public class Cluster {
 	}
 	
 	
+	/**
+	 * Move the given nodes to their best label until none of them improves. For every node only its edges
+	 * are summed by label, and only the touched labels are compared, so a sparse matrix is repaired
+	 * in time proportional to the degrees of the nodes.
+	 * @param nodes - the nodes to repair
+	 * @param matrix - the correlation matrix
+	 */
+	public void repairNodes(List<Integer> nodes, CorrelationMatrix matrix) {
+		int[] labels = this.clustering;
+		int offset = this.offset;
+		double[] positive = new double[this.size];
+		double[] negative = new double[this.size];
+		int[] touched = new int[this.size];
+		this.computeValue(matrix);
+		boolean moved = true;
+		
+		for(int pass = 0; moved && pass < this.size; pass++) {
+			moved = false;
+			for(int k = 0; k < nodes.size(); k++) {
+				int node = nodes.get(k);
+				int count = matrix.sumTowardsLabels(labels, offset, this.size, node, positive, negative, touched);
+				
+				// joining a label costs its negative edges and saves its positive edges
+				int bestLabel = labels[offset + node];
+				double bestGain = negative[bestLabel] - positive[bestLabel];
+				for(int t = 0; t < count; t++) {
+					int label = touched[t];
+					if(negative[label] - positive[label] < bestGain) {
+						bestLabel = label;
+						bestGain = negative[label] - positive[label];
+					}
+				}
+				// while moving to an unused label costs nothing; a node alone already has one
+				if(bestGain > 0)
+					bestLabel = this.used.nextClearBit(0);
+				
+				if(bestLabel != labels[offset + node]) {
+					this.modifyClusteringAndComputeValue(node, bestLabel, matrix);
+					moved = true;
+				}
+				
+				// clear the counters
+				for(int t = 0; t < count; t++)
+					positive[touched[t]] = negative[touched[t]] = 0;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Update the goodness after a single edge of the correlation matrix has changed.
+	 * Only the error of the changed edge is recounted, so it runs in constant time.
+	 * @param i - the first node of the edge
+	 * @param j - the second node of the edge
+	 * @param oldWeight - the previous weight of the edge
+	 * @param newWeight - the new weight of the edge
+	 */
+	public void updateEdge(int i, int j, double oldWeight, double newWeight) {
+		if(this.computed && i != j) {
+			// in the same cluster only the negative edges are errors, in different clusters only the positive ones
+			boolean together = this.clustering[this.offset + i] == this.clustering[this.offset + j];
+			this.value += CorrelationMatrix.error(newWeight, together) - CorrelationMatrix.error(oldWeight, together);
+		}
+	}
+	
+	
 	/**
 	 * Clone the clustering.
 	 */
 	@Override
 	protected Object clone() throws CloneNotSupportedException {
 		Cluster clone = new Cluster(this.size);
-		clone.setClustering(this.clustering.clone());
+		clone.setClustering(Arrays.copyOfRange(this.clustering, this.offset, this.offset + this.size));
 		clone.setUniform(this.uniform);
 		clone.setComputed(this.computed);
 		clone.setValue(this.value);
@@ -77,6 +77,17 @@ public class CorrelationMatrix {
 	}
 	
 	
+	/**
+	 * Constructor for subclasses keeping the edges in their own storage.
+	 * @param size - size of the matrix
+	 * @param correlationMatrix - the dense matrix, or null if the subclass does not use it
+	 */
+	protected CorrelationMatrix(int size, int[][] correlationMatrix) {
+		this.size = size;
+		this.correlationMatrix = correlationMatrix;
+	}
+	
+	
 	/**
 	 * Generates a random edge:	0 - not connected
 	 * 							1 - positively connected
@@ -113,6 +124,212 @@ public class CorrelationMatrix {
 	}
 
 
+	/**
+	 * Get the value of a single edge.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @return the edge value.
+	 */
+	public int getEdge(int i, int j) {
+		return this.correlationMatrix[i][j];
+	}
+	
+	
+	/**
+	 * Set a single edge. Both directions are updated, so the matrix stays symmetric.
+	 * Setting 0 deletes the edge, setting 1 or -1 inserts or flips it.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @param value - the new edge value
+	 * @return the previous edge value.
+	 */
+	public int setEdge(int i, int j, int value) {
+		int previous = this.correlationMatrix[i][j];
+		if(i != j)
+			this.correlationMatrix[i][j] = this.correlationMatrix[j][i] = value;
+		return previous;
+	}
+
+
+	/**
+	 * Create a copy of the matrix with the nodes in a new order, e.g. a bandwidth reducing one.
+	 * @param order - the permutation, the node at position k of the copy is node order[k] of this matrix
+	 * @return the permuted matrix.
+	 */
+	public CorrelationMatrix permute(int[] order) {
+		CorrelationMatrix permuted = new CorrelationMatrix(this.size);
+		for(int a = 0; a < this.size; a++)
+			for(int b = 0; b < this.size; b++)
+				permuted.correlationMatrix[a][b] = this.correlationMatrix[order[a]][order[b]];
+		return permuted;
+	}
+	
+	
+	/**
+	 * Get the weight of an edge. Without weights it is the edge value itself.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @return the weight of the edge.
+	 */
+	public double getWeight(int i, int j) {
+		return this.correlationMatrix[i][j];
+	}
+	
+	
+	/**
+	 * Tell if the edges have weights other than 1, -1 and 0.
+	 * @return false, the matrix only stores signs.
+	 */
+	public boolean isWeighted() {
+		return false;
+	}
+	
+	
+	/**
+	 * Compute the error of a clustering: the weights of the cut positive edges and the absolute weights
+	 * of the negative edges inside the clusters.
+	 * @param labels - the labels of the nodes
+	 * @param offset - the position of the label of node 0
+	 * @param size - the number of nodes
+	 * @return the error.
+	 */
+	public double computeError(int[] labels, int offset, int size) {
+		double value = 0.0;
+		for(int i = 0; i < size; i++) {
+			int[] row = this.correlationMatrix[i];
+			int label = labels[offset + i];
+			for(int j = i + 1; j < size; j++)
+				value += error(row[j], label == labels[offset + j]);
+		}
+		return value;
+	}
+	
+	
+	/**
+	 * Compute the change of the error if a node gets a new label. Only the edges of the node are read.
+	 * @param labels - the labels of the nodes
+	 * @param offset - the position of the label of node 0
+	 * @param size - the number of nodes
+	 * @param node - the node to move
+	 * @param newLabel - its new label
+	 * @return the new error minus the old error.
+	 */
+	public double moveDelta(int[] labels, int offset, int size, int node, int newLabel) {
+		int[] row = this.correlationMatrix[node];
+		int oldLabel = labels[offset + node];
+		double delta = 0.0;
+		for(int i = 0; i < size; i++)
+			if(i != node && row[i] != 0)
+				delta += error(row[i], labels[offset + i] == newLabel) - error(row[i], labels[offset + i] == oldLabel);
+		return delta;
+	}
+	
+	
+	/**
+	 * Sum the edges of a node towards the labels of its neighbours. The sums are added to the given arrays,
+	 * and every label whose sums were zero before is listed once in touched, so the caller can clear them.
+	 * @param labels - the labels of the nodes
+	 * @param offset - the position of the label of node 0
+	 * @param size - the number of nodes
+	 * @param node - the node
+	 * @param positive - the sums of the positive weights by label
+	 * @param negative - the sums of the absolute negative weights by label
+	 * @param touched - receives the labels of the neighbours
+	 * @return the number of touched labels.
+	 */
+	public int sumTowardsLabels(int[] labels, int offset, int size, int node, double[] positive, double[] negative, int[] touched) {
+		int[] row = this.correlationMatrix[node];
+		int count = 0;
+		for(int i = 0; i < size; i++)
+			if(i != node && row[i] != 0)
+				count = add(labels[offset + i], row[i], positive, negative, touched, count);
+		return count;
+	}
+	
+	
+	/**
+	 * Get the non-zero edges of a node. A dense matrix reads the whole row.
+	 * @param node - the node
+	 * @param columns - receives the other ends of the edges, at least size long
+	 * @param weights - receives the weights of the edges, at least size long
+	 * @return the number of edges.
+	 */
+	public int getNeighbours(int node, int[] columns, double[] weights) {
+		int[] row = this.correlationMatrix[node];
+		int count = 0;
+		for(int j = 0; j < this.size; j++)
+			if(j != node && row[j] != 0) {
+				columns[count] = j;
+				weights[count] = row[j];
+				count++;
+			}
+		return count;
+	}
+	
+	
+	/**
+	 * Create the matrix of the edges between some of the nodes, in the same storage as this matrix.
+	 * @param nodes - the nodes, node k of the result is nodes[k]
+	 * @return the matrix of the nodes.
+	 */
+	public CorrelationMatrix subMatrix(int[] nodes) {
+		CorrelationMatrix part = new CorrelationMatrix(nodes.length);
+		for(int a = 0; a < nodes.length; a++)
+			for(int b = 0; b < nodes.length; b++)
+				part.correlationMatrix[a][b] = this.correlationMatrix[nodes[a]][nodes[b]];
+		return part;
+	}
+	
+	
+	/**
+	 * The error of a single edge.
+	 * @param weight - the weight of the edge
+	 * @param together - the two nodes are in the same cluster
+	 * @return the absolute weight of a negative edge inside or a positive edge between the clusters, else 0.
+	 */
+	public static double error(double weight, boolean together) {
+		if(together)
+			return weight < 0 ? -weight : 0.0;
+		return weight > 0 ? weight : 0.0;
+	}
+	
+	
+	/**
+	 * Add an edge to the sums of a label, see sumTowardsLabels.
+	 * @return the new number of touched labels.
+	 */
+	protected static int add(int label, double weight, double[] positive, double[] negative, int[] touched, int count) {
+		if(positive[label] == 0 && negative[label] == 0)
+			touched[count++] = label;
+		if(weight > 0)
+			positive[label] += weight;
+		else
+			negative[label] -= weight;
+		return count;
+	}
+	
+	
+	/**
+	 * The weight of an edge after setEdge: a flipped edge keeps its magnitude, a new one gets unit weight.
+	 * @param previous - the previous weight
+	 * @param value - the new edge value: 1, -1 or 0
+	 * @return the new weight.
+	 */
+	protected static float signedWeight(float previous, int value) {
+		float magnitude = previous != 0 ? Math.abs(previous) : 1.0f;
+		return value > 0 ? magnitude : (value < 0 ? -magnitude : 0.0f);
+	}
+
+
+	/**
+	 * Set the size of the matrix, for subclasses building their storage after the constructor.
+	 * @param size - the size of the matrix
+	 */
+	protected void setSize(int size) {
+		this.size = size;
+	}
+	
+	
 	/**
 	 * Get the size of the matrix.
 	 * @return the size of the matrix
@@ -0,0 +1,28 @@
+import java.util.Random;
+
+
+public class DegreeOrder extends NodeOrder {
+
+	/**
+	 * The nodes by descending degree, so the most constrained nodes are placed first.
+	 * Equal degrees keep the index order.
+	 */
+	@Override
+	public int[] order(CorrelationMatrix matrix, Random generator) {
+		int size = matrix.getSize();
+		int[] start = new int[size + 1];
+		neighbours(matrix, start);
+
+		// counting sort by the degree
+		int[] count = new int[size + 1];
+		for(int i = 0; i < size; i++)
+			count[size - (start[i + 1] - start[i])]++;
+		for(int d = 1; d <= size; d++)
+			count[d] += count[d - 1];
+		int[] order = new int[size];
+		for(int i = size - 1; i >= 0; i--)
+			order[--count[size - (start[i + 1] - start[i])]] = i;
+		return order;
+	}
+
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class DeltaResultWriter extends BinaryResultWriter {
+
+	// the labels of the previous solution
+	private int[] previous;
+	private int previousSize = -1;
+
+
+	/**
+	 * Constructor. Creates a binary writer which stores a solution only by its differences from
+	 * the previous one, e.g. for the sequence of improving solutions of a run.
+	 * @param out - the output stream
+	 */
+	public DeltaResultWriter(OutputStream out) {
+		super(out);
+	}
+
+
+	/**
+	 * The first solution and every solution of a different size is written in full. The others are written as:
+	 * DELTA_SOLUTION, value, number of changed labels, then for every change the gap from the previous
+	 * changed position and the new label. The cluster members are not repeated, they follow from the labels.
+	 */
+	@Override
+	public void writeSolution(Cluster solution) throws IOException {
+		int size = solution.getSize();
+		int[] labels = labelsOf(solution);
+		if(size != this.previousSize) {
+			super.writeSolution(solution);
+			this.previous = new int[size];
+			System.arraycopy(labels, 0, this.previous, 0, size);
+			this.previousSize = size;
+			return;
+		}
+
+		int changes = 0;
+		for(int i = 0; i < size; i++)
+			if(labels[i] != this.previous[i])
+				changes++;
+
+		this.out.write(DELTA_SOLUTION);
+		this.out.writeDouble(solution.getValue());
+		this.writeVarInt(changes);
+		int position = 0;
+		for(int i = 0; i < size; i++)
+			if(labels[i] != this.previous[i]) {
+				this.writeVarInt(i - position);
+				this.writeVarInt(labels[i]);
+				this.previous[i] = labels[i];
+				position = i;
+			}
+	}
+
+}
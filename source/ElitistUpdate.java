@@ -0,0 +1,29 @@
+public class ElitistUpdate extends PheromoneUpdate {
+
+	// weight of the best-so-far solution
+	private double weight;
+
+
+	/**
+	 * Constructor.
+	 * @param weight - the best solution found so far deposits this many times as much as an ant
+	 */
+	public ElitistUpdate(double weight) {
+		this.weight = weight;
+	}
+
+
+	/**
+	 * Elitist Ant System update: every ant deposits 1 / error, and the best solution found so far
+	 * deposits weight / error on top of that.
+	 */
+	@Override
+	public void update(double[][] pheromone, int size, Population population, Cluster best, double rho) {
+		this.evaporate(pheromone, size, 1.0 - rho);
+		for(int k = 0; k < population.getCount(); k++)
+			this.deposit(pheromone, population, k, this.amount(population.getValue(k)));
+		if(best != null)
+			this.deposit(pheromone, best, this.weight * this.amount(best.getValue()));
+	}
+
+}
@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+public class LowerBound {
+
+	private CorrelationMatrix matrix;
+	private int size;
+
+	/*
+	 * The index of the edges: the edges of node i to larger nodes are at rowStart[i] .. rowStart[i + 1] - 1,
+	 * ordered by their column. Edges inserted after the bound is computed are not indexed, so they are not packed.
+	 */
+	private int[] rowStart;
+	private int[] columns;
+
+	/*
+	 * The packing: the triangle owning each indexed edge (0 for a free edge, negative while a thread is claiming it),
+	 * and the nodes and the costs of the triangles by their id. Released triangles are null.
+	 */
+	private AtomicIntegerArray owner;
+	private int[][] triangles;
+	private double[] costs;
+	private AtomicInteger nextId;
+	private ArrayList<Integer> releasedIds = new ArrayList<Integer>();
+	private int numberOfTriangles;
+	private double value;
+
+	// scratch space of the updates
+	private int[] neighbours;
+	private double[] weights;
+
+
+	/**
+	 * Constructor. The bound has to be computed before it is used.
+	 * @param matrix - the correlation matrix
+	 */
+	public LowerBound(CorrelationMatrix matrix) {
+		this.matrix = matrix;
+		this.size = matrix.getSize();
+	}
+
+
+	/**
+	 * Compute the bound by greedily packing edge-disjoint bad triangles: triangles with two positive and one
+	 * negative edge. Every clustering makes an error on at least one edge of every bad triangle, so the sum of
+	 * the smallest absolute weights of the packed triangles is a lower bound of the error.
+	 * The triangles are searched in parallel; the threads claim the edges atomically.
+	 * If the calling thread is interrupted, the threads are stopped and waited for, and the bound is left uncomputed.
+	 * @param threads - number of threads
+	 * @return the lower bound.
+	 * @throws InterruptedException if the calling thread was interrupted, after every thread has stopped
+	 */
+	public double compute(int threads) throws InterruptedException {
+		this.buildIndex();
+		this.owner = new AtomicIntegerArray(this.columns.length);
+		this.nextId = new AtomicInteger(1);
+		this.releasedIds.clear();
+		final AtomicInteger nextPivot = new AtomicInteger(0);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final ArrayList<ArrayList<int[]>> found = new ArrayList<ArrayList<int[]>>();
+
+		Thread[] workers = new Thread[threads];
+		for(int t = 0; t < threads; t++) {
+			final ArrayList<int[]> local = new ArrayList<int[]>();
+			// every thread marks the edges it is claiming with its own token
+			final int token = -(t + 1);
+			found.add(local);
+			workers[t] = new Thread() {
+				public void run() {
+					int pivot;
+					while(!(stop.get()) && (pivot = nextPivot.getAndIncrement()) < LowerBound.this.size)
+						LowerBound.this.packPivot(pivot, token, local);
+				}
+			};
+			workers[t].start();
+		}
+		try {
+			for(int t = 0; t < threads; t++)
+				workers[t].join();
+		} catch (InterruptedException e) {
+			// nothing may still be packing when the caller goes on
+			stop.set(true);
+			for(int t = 0; t < threads; t++)
+				while(workers[t].isAlive()) {
+					try {
+						workers[t].join();
+					} catch (InterruptedException again) {
+						// the first interruption is passed on
+					}
+				}
+			this.triangles = null;
+			this.costs = null;
+			this.numberOfTriangles = 0;
+			this.value = 0.0;
+			throw e;
+		}
+
+		// collect the triangles by their id
+		this.triangles = new int[this.nextId.get()][];
+		this.costs = new double[this.triangles.length];
+		this.numberOfTriangles = 0;
+		this.value = 0.0;
+		for(int t = 0; t < threads; t++)
+			for(int k = 0; k < found.get(t).size(); k++) {
+				int[] triangle = found.get(t).get(k);
+				this.triangles[triangle[3]] = triangle;
+				this.costs[triangle[3]] = this.cost(triangle[0], triangle[1], triangle[2]);
+				this.numberOfTriangles++;
+				this.value += this.costs[triangle[3]];
+			}
+		return this.value;
+	}
+
+
+	/**
+	 * Index the non-zero edges of the matrix, each one in the row of its smaller node.
+	 */
+	private void buildIndex() {
+		this.neighbours = new int[this.size];
+		this.weights = new double[this.size];
+		this.rowStart = new int[this.size + 1];
+		int[] columns = new int[16];
+		int position = 0;
+		for(int i = 0; i < this.size; i++) {
+			this.rowStart[i] = position;
+			int count = this.matrix.getNeighbours(i, this.neighbours, this.weights);
+			for(int k = 0; k < count; k++)
+				if(this.neighbours[k] > i) {
+					if(position == columns.length)
+						columns = Arrays.copyOf(columns, 2 * position);
+					columns[position++] = this.neighbours[k];
+				}
+			Arrays.sort(columns, this.rowStart[i], position);
+		}
+		this.rowStart[this.size] = position;
+		this.columns = Arrays.copyOf(columns, position);
+	}
+
+
+	/**
+	 * Pack the bad triangles whose smallest node is the pivot. Only the neighbours of the pivot are visited.
+	 * @param i - the pivot
+	 * @param token - the mark of the claiming thread
+	 * @param found - the packed triangles as {i, j, k, id}
+	 */
+	private void packPivot(int i, int token, ArrayList<int[]> found) {
+		for(int a = this.rowStart[i]; a < this.rowStart[i + 1]; a++) {
+			int j = this.columns[a];
+			for(int b = a + 1; b < this.rowStart[i + 1] && this.owner.get(a) == 0; b++) {
+				int k = this.columns[b], c = this.index(j, k);
+				if(c == -1 || !(this.isBad(i, j, k)))
+					continue;
+				// the id is only taken once the triangle is packed, so failed claims do not use up ids
+				if(this.claim(a, b, c, token))
+					found.add(this.assign(i, j, k, this.nextId.getAndIncrement()));
+			}
+		}
+	}
+
+
+	/**
+	 * Tell if three nodes form a bad triangle.
+	 */
+	private boolean isBad(int i, int j, int k) {
+		double a = this.matrix.getWeight(i, j), b = this.matrix.getWeight(i, k), c = this.matrix.getWeight(j, k);
+		if(a == 0.0 || b == 0.0 || c == 0.0)
+			return false;
+		int positives = (a > 0 ? 1 : 0) + (b > 0 ? 1 : 0) + (c > 0 ? 1 : 0);
+		return positives == 2;
+	}
+
+
+	/**
+	 * The smallest error a clustering can make on a bad triangle.
+	 */
+	private double cost(int i, int j, int k) {
+		return Math.min(Math.abs(this.matrix.getWeight(i, j)), Math.min(Math.abs(this.matrix.getWeight(i, k)), Math.abs(this.matrix.getWeight(j, k))));
+	}
+
+
+	/**
+	 * Claim the three edges of a triangle, or none of them.
+	 * @return true if every edge was free.
+	 */
+	private boolean claim(int a, int b, int c, int token) {
+		if(!(this.owner.compareAndSet(a, 0, token)))
+			return false;
+		if(!(this.owner.compareAndSet(b, 0, token))) {
+			this.owner.set(a, 0);
+			return false;
+		}
+		if(!(this.owner.compareAndSet(c, 0, token))) {
+			this.owner.set(a, 0);
+			this.owner.set(b, 0);
+			return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Give the claimed edges of a triangle to its id.
+	 * @return the triangle as {i, j, k, id}.
+	 */
+	private int[] assign(int i, int j, int k, int id) {
+		this.owner.set(this.index(i, j), id);
+		this.owner.set(this.index(i, k), id);
+		this.owner.set(this.index(j, k), id);
+		return new int[] {i, j, k, id};
+	}
+
+
+	/**
+	 * The position of an edge in the index.
+	 * @return the position, or -1 if the edge is not indexed.
+	 */
+	private int index(int i, int j) {
+		if(i > j)
+			return this.index(j, i);
+		int position = Arrays.binarySearch(this.columns, this.rowStart[i], this.rowStart[i + 1], j);
+		return position < 0 ? -1 : position;
+	}
+
+
+	/**
+	 * Keep the bound valid after an edge of the matrix has changed. The triangle using the edge is released,
+	 * then new bad triangles are searched around the edge and the freed edges, so the update costs
+	 * the degree of the nodes times the logarithm of the degree.
+	 * @param i - the first node of the changed edge
+	 * @param j - the second node of the changed edge
+	 */
+	public synchronized void updateEdge(int i, int j) {
+		if(this.owner == null || i == j)
+			return;
+
+		int edge = this.index(i, j);
+		if(edge == -1)
+			return;
+		int id = this.owner.get(edge);
+		if(id != 0) {
+			// release the triangle with the cost it was packed with
+			int[] triangle = this.triangles[id];
+			this.owner.set(this.index(triangle[0], triangle[1]), 0);
+			this.owner.set(this.index(triangle[0], triangle[2]), 0);
+			this.owner.set(this.index(triangle[1], triangle[2]), 0);
+			this.triangles[id] = null;
+			this.releasedIds.add(id);
+			this.numberOfTriangles--;
+			this.value -= this.costs[id];
+
+			this.packEdge(triangle[0], triangle[1]);
+			this.packEdge(triangle[0], triangle[2]);
+			this.packEdge(triangle[1], triangle[2]);
+		}
+		else
+			this.packEdge(i, j);
+	}
+
+
+	/**
+	 * Pack a bad triangle on a free edge, if there is one.
+	 */
+	private void packEdge(int i, int j) {
+		int edge = this.index(i, j);
+		if(edge == -1 || this.owner.get(edge) != 0 || this.matrix.getWeight(i, j) == 0.0)
+			return;
+		int count = this.matrix.getNeighbours(i, this.neighbours, this.weights);
+		for(int n = 0; n < count; n++) {
+			int k = this.neighbours[n];
+			if(k == j)
+				continue;
+			int b = this.index(i, k), c = this.index(j, k);
+			if(b == -1 || c == -1 || this.owner.get(b) != 0 || this.owner.get(c) != 0 || !(this.isBad(i, j, k)))
+				continue;
+			if(this.claim(edge, b, c, -1)) {
+				int id = this.freeId();
+				this.triangles[id] = this.assign(i, j, k, id);
+				this.costs[id] = this.cost(i, j, k);
+				this.numberOfTriangles++;
+				this.value += this.costs[id];
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Get an unused triangle id, growing the triangle array if needed.
+	 */
+	private int freeId() {
+		if(!(this.releasedIds.isEmpty()))
+			return this.releasedIds.remove(this.releasedIds.size() - 1);
+		int id = this.nextId.getAndIncrement();
+		if(id >= this.triangles.length) {
+			int[][] grown = new int[2 * this.triangles.length + 1][];
+			System.arraycopy(this.triangles, 0, grown, 0, this.triangles.length);
+			this.triangles = grown;
+			this.costs = Arrays.copyOf(this.costs, grown.length);
+		}
+		return id;
+	}
+
+
+	/**
+	 * Get the lower bound.
+	 * @return the bound, or 0 before it is computed.
+	 */
+	public synchronized double getValue() {
+		return value;
+	}
+
+
+	/**
+	 * Get the number of packed triangles.
+	 * @return the number of triangles.
+	 */
+	public synchronized int getNumberOfTriangles() {
+		return numberOfTriangles;
+	}
+
+}
@@ -12,6 +12,10 @@ public class Main {
 	private static int numberOfAnts;
 	private static int maxIterations;
 	private static boolean local = true;
+	// compute the lower bound of the error after solving, it takes O(n^3) time on dense problems
+	private static boolean lowerBound = false;
+	// stream the improving solutions of a single test to this file, null for none
+	private static String solutionFile = null;
 	
 	
 	private static Cluster singleTest(boolean printresults) throws CloneNotSupportedException {
@@ -27,14 +31,33 @@ public class Main {
 			AntSystem hangyaboj = new AntSystem(size, ratio, zeros, numberOfAnts, alpha, beta, rho, maxIterations, local);
 			//AntSystem hangyaboj = new AntSystem("bemenet.txt", numberOfAnts, alpha, beta, rho, maxIterations);
 			
+			// the improving solutions are written while solving
+			ResultWriter solutions = null;
+			if(solutionFile != null) {
+				try {
+					solutions = openSolutions(solutionFile);
+				} catch (IOException e) {
+					System.out.println(e);
+				}
+				hangyaboj.setSolutionWriter(solutions);
+			}
+			
 			// start time
 			long startTime = System.currentTimeMillis();
 			
 			// problem solving
-			solution = (Cluster)hangyaboj.solve();
+			try {
+				solution = (Cluster)hangyaboj.solve();
+			} finally {
+				closeSolutions(solutions);
+			}
+			if(hangyaboj.getSolutionWriterError() != null)
+				System.out.println(hangyaboj.getSolutionWriterError());
 			
 			// print results
 			System.out.printf("\nSolved!\nRequired time: %d ms\nError: %.2f\nSize of the largest cluster: %d\n", (System.currentTimeMillis() - startTime), solution.getValue(), solution.getLargestClusterSize());
+			if(lowerBound)
+				System.out.printf("Lower bound: %.2f\n", hangyaboj.getLowerBound().getValue());
 			
 			/*		
 		 		// print solution
@@ -56,55 +79,88 @@ public class Main {
 	}
 	
 	private static void multiTest(int numberOfTests, String filename) throws CloneNotSupportedException {
-		double[][][][][] AverageLargestClusterSizesAndError = new double[5][5][5][21][2];
+		double averageLargestClusterSize, averageError;
 		Cluster solution;
 		// start time
 		long startTime = System.currentTimeMillis();
 		System.out.println("Process started!");
 		
-		for(int _alpha_ = 0; _alpha_ < 5; _alpha_++) {
-			alpha = 0.0 + _alpha_ * 0.625;
-			for(int _beta_ = 0; _beta_ < 5; _beta_++) { 
-				beta = 0.0 + _beta_ * 0.5;
-				for(int _rho_ = 0; _rho_ < 5; _rho_++) {
-					rho = 0.0 + _rho_ * 0.25;
+		// the rows are written as soon as they are computed
+		TextResultWriter out;
+		try {
+			out = openResults(filename);
+		} catch (IOException e) {
+			System.out.println(e);
+			return;
+		}
 		
-					System.out.print("\nalpha: " + _alpha_ + "/4 beta: " + _beta_ + "/4 rho: " + _rho_ + "/4 > ");
-					for(int _ratio_ = 0; _ratio_ < 21; _ratio_++) {
-						ratio = 0.0 + _ratio_ * 0.05;
-						for(int j = 0; j < numberOfTests; j++) {
-							solution = singleTest(false);
-							AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][0] += solution.getLargestClusterSize();
-							AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][1] += solution.getValue();
+		try {
+			try {
+				for(int _alpha_ = 0; _alpha_ < 5; _alpha_++) {
+					alpha = 0.0 + _alpha_ * 0.625;
+					for(int _beta_ = 0; _beta_ < 5; _beta_++) { 
+						beta = 0.0 + _beta_ * 0.5;
+						for(int _rho_ = 0; _rho_ < 5; _rho_++) {
+							rho = 0.0 + _rho_ * 0.25;
+			
+							System.out.print("\nalpha: " + _alpha_ + "/4 beta: " + _beta_ + "/4 rho: " + _rho_ + "/4 > ");
+							for(int _ratio_ = 0; _ratio_ < 21; _ratio_++) {
+								ratio = 0.0 + _ratio_ * 0.05;
+								averageLargestClusterSize = averageError = 0.0;
+								for(int j = 0; j < numberOfTests; j++) {
+									solution = singleTest(false);
+									averageLargestClusterSize += solution.getLargestClusterSize();
+									averageError += solution.getValue();
+								}
+								averageLargestClusterSize /= numberOfTests;
+								averageError /= numberOfTests;
+								out.writeStatistics(ratio, alpha, beta, rho, averageLargestClusterSize, averageError);
+								System.out.print(".");
+							}
+							out.flush();
 						}
-						AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][0] /= numberOfTests;
-						AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][1] /= numberOfTests;
-						System.out.print(".");
 					}
 				}
+			} finally {
+				out.close();
 			}
+		} catch (IOException e) {
+			System.out.println(e);
 		}
 		System.out.println("\nDone!\nRequired time: " + (System.currentTimeMillis() - startTime));
-		saveToFile(filename, AverageLargestClusterSizesAndError);
 	}
 
 	
-	private static void saveToFile(String filename, double[][][][][] AverageLargestClusterSizesAndError) {
+	private static TextResultWriter openResults(String filename) throws IOException {
 		Calendar cal = Calendar.getInstance();
+		TextResultWriter out = new TextResultWriter(new FileOutputStream(filename), 4);
+		// save the date of creation
+		out.writeComment("Created on " + cal.getTime());
+		out.writeComment("Size of the problem: " + size);
+		out.writeHeader("ratio", "alpha", "beta", "rho", "avgsize", "error");
+		return out;
+	}
+	
+	
+	/**
+	 * Open a writer for the solutions. The format follows the extension of the file: ".txt" for text,
+	 * ".delta" for the changes from the previous solution, and compact binary records otherwise.
+	 */
+	private static ResultWriter openSolutions(String filename) throws IOException {
+		FileOutputStream out = new FileOutputStream(filename);
+		if(filename.endsWith(".txt"))
+			return new TextResultWriter(out, 4);
+		if(filename.endsWith(".delta"))
+			return new DeltaResultWriter(out);
+		return new BinaryResultWriter(out);
+	}
+	
+	
+	private static void closeSolutions(ResultWriter solutions) {
+		if(solutions == null)
+			return;
 		try {
-		    BufferedWriter out = new BufferedWriter(new FileWriter(filename));
-		    // save the date of creation
-		    out.write("# Created on " + cal.getTime() + "\n# Size of the problem: " + size);
-		    out.write("\nratio;alpha;beta;rho;avgsize;error\n");
-		    for(int _alpha_ = 0; _alpha_ < 5; _alpha_++)
-		    	for(int _beta_ = 0; _beta_ < 5; _beta_++)
-		    		for(int _rho_ = 0; _rho_ < 5; _rho_++)
-		    			for(int _ratio_ = 0; _ratio_ < 21; _ratio_++)
-		    				out.write(String.format("%.2f", (0.0 + _ratio_ * 0.05)) + ";" + (0.0 + _alpha_ * 0.625) + ";" + 
-		    						(0.0 + _beta_ * 0.5) + ";" + (0.0 + _rho_ * 0.25) + ";" + 
-		    						AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][0] + ";" +
-		    						AverageLargestClusterSizesAndError[_alpha_][_beta_][_rho_][_ratio_][1] + "\n");
-		    out.close();
+			solutions.close();
 		} catch (IOException e) {
 			System.out.println(e);
 		}
@@ -126,6 +182,8 @@ public class Main {
 		numberOfAnts = 5;
 		maxIterations = 10;
 		local = false;
+		lowerBound = false;
+		solutionFile = "solutions.delta";
 		String filename = "/home/fuli/Asztal/results.csv";
 		
 		//multiTest(10, filename);
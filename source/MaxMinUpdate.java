@@ -0,0 +1,49 @@
+public class MaxMinUpdate extends PheromoneUpdate {
+
+	// tauMin = tauMax * minRatio
+	private double minRatio;
+	// deposit with the best solution found so far instead of the best of the iteration
+	private boolean bestSoFar;
+
+
+	/**
+	 * Constructor.
+	 * @param minRatio - ratio of the lower and the upper pheromone bound
+	 * @param bestSoFar - deposit with the best solution found so far instead of the iteration best
+	 */
+	public MaxMinUpdate(double minRatio, boolean bestSoFar) {
+		this.minRatio = minRatio;
+		this.bestSoFar = bestSoFar;
+	}
+
+
+	/**
+	 * MAX-MIN Ant System update: only one solution deposits, and the pheromone levels are kept
+	 * between tauMin and tauMax = 1 / (rho * best error), so they can neither stagnate nor wash out.
+	 */
+	@Override
+	public void update(double[][] pheromone, int size, Population population, Cluster best, double rho) {
+		this.evaporate(pheromone, size, 1.0 - rho);
+		
+		// select the depositing solution
+		int k = population.best();
+		if(this.bestSoFar && best != null)
+			this.deposit(pheromone, best, this.amount(best.getValue()));
+		else if(k != -1)
+			this.deposit(pheromone, population, k, this.amount(population.getValue(k)));
+		
+		// without decay there is no upper bound
+		if(rho <= 0.0 || best == null)
+			return;
+		double tauMax = this.amount(best.getValue()) / rho;
+		double tauMin = tauMax * this.minRatio;
+		for(int i = 0; i < size; i++)
+			for(int j = 0; j < size; j++) {
+				if(pheromone[i][j] > tauMax)
+					pheromone[i][j] = tauMax;
+				else if(pheromone[i][j] < tauMin)
+					pheromone[i][j] = tauMin;
+			}
+	}
+
+}
@@ -0,0 +1,106 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+public class MergeSeeder extends Seeder {
+
+	/**
+	 * Greedy merging of positive components: starting from single nodes, two clusters connected by a positive
+	 * edge are merged whenever the total weight between them is positive, which always lowers the error.
+	 * The edges are visited in random order until a pass merges nothing. The weights between the clusters
+	 * are kept in maps, the smaller map is merged into the larger one.
+	 */
+	@Override
+	public Cluster seed(CorrelationMatrix matrix, Random generator) {
+		int size = matrix.getSize();
+		Edges edges = collectEdges(matrix);
+
+		// the cluster of every node, and the weights between the clusters
+		int[] parent = new int[size];
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		HashMap<Integer, Double>[] between = new HashMap[size];
+		for(int i = 0; i < size; i++) {
+			parent[i] = i;
+			between[i] = new HashMap<Integer, Double>();
+		}
+		for(int k = 0; k < edges.count; k++) {
+			add(between[edges.from[k]], edges.to[k], edges.weight[k]);
+			add(between[edges.to[k]], edges.from[k], edges.weight[k]);
+		}
+
+		// random order of the positive edges
+		int[] order = new int[edges.count];
+		int positives = 0;
+		for(int k = 0; k < edges.count; k++)
+			if(edges.weight[k] > 0)
+				order[positives++] = k;
+		for(int i = positives - 1; i > 0; i--) {
+			int j = generator.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+
+		boolean merged = true;
+		while(merged) {
+			merged = false;
+			for(int k = 0; k < positives; k++) {
+				int a = find(parent, edges.from[order[k]]), b = find(parent, edges.to[order[k]]);
+				if(a == b)
+					continue;
+				Double weight = between[a].get(b);
+				if(weight == null || weight <= 0)
+					continue;
+
+				// merge the smaller cluster into the larger one
+				if(between[a].size() < between[b].size()) {
+					int temp = a;
+					a = b;
+					b = temp;
+				}
+				parent[b] = a;
+				between[a].remove(b);
+				for(Map.Entry<Integer, Double> entry : between[b].entrySet()) {
+					int c = entry.getKey();
+					if(c == a)
+						continue;
+					add(between[a], c, entry.getValue());
+					between[c].remove(b);
+					add(between[c], a, entry.getValue());
+				}
+				between[b] = null;
+				merged = true;
+			}
+		}
+
+		int[] labels = new int[size];
+		for(int i = 0; i < size; i++)
+			labels[i] = find(parent, i);
+		Cluster clustering = new Cluster(size);
+		clustering.setClustering(labels);
+		return clustering;
+	}
+
+
+	/**
+	 * Add a weight to the weight towards a cluster.
+	 */
+	private static void add(HashMap<Integer, Double> weights, int cluster, double weight) {
+		Double old = weights.get(cluster);
+		weights.put(cluster, old == null ? weight : old + weight);
+	}
+
+
+	/**
+	 * Find the cluster of a node with path halving.
+	 */
+	private static int find(int[] parent, int node) {
+		while(parent[node] != node) {
+			parent[node] = parent[parent[node]];
+			node = parent[node];
+		}
+		return node;
+	}
+
+}
@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class MultilevelSolver {
+
+	private CorrelationMatrix matrix;
+	private int numberOfAnts, maxIterations, coarsestSize;
+	private double alpha, beta, rho;
+	private boolean local;
+	private Random generator = new Random();
+
+	// the levels of the last solve, the first one is the original matrix
+	private ArrayList<CorrelationMatrix> levels;
+	// map of the nodes of a level to the nodes of the next, coarser level
+	private ArrayList<int[]> mappings;
+
+
+	/**
+	 * Constructor. Creates a solver which coarsens the problem, solves the coarsest level with an Ant System
+	 * and refines the solution back to the original problem.
+	 * @param matrix - the correlation matrix
+	 * @param number - number of ants
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations
+	 * @param local - use only the neighbour labels while building the solutions
+	 * @param coarsestSize - stop coarsening below this many nodes
+	 */
+	public MultilevelSolver(CorrelationMatrix matrix, int number, double alpha, double beta, double rho, int maxIterations, boolean local, int coarsestSize) {
+		this.matrix = matrix;
+		this.numberOfAnts = number;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.rho = rho;
+		this.maxIterations = maxIterations;
+		this.local = local;
+		this.coarsestSize = coarsestSize;
+	}
+
+
+	/**
+	 * Solve the problem: coarsen, solve the coarsest level with ants, then project the solution
+	 * back level by level and refine the boundary nodes on every level.
+	 * @return a Cluster containing the results
+	 * @throws CloneNotSupportedException
+	 */
+	public Cluster solve() throws CloneNotSupportedException {
+		this.coarsen();
+
+		// solve the coarsest level
+		CorrelationMatrix coarsest = this.levels.get(this.levels.size() - 1);
+		AntSystem system = new AntSystem(coarsest, this.numberOfAnts, this.alpha, this.beta, this.rho, this.maxIterations, this.local);
+		Cluster solution = system.solve();
+
+		// project and refine
+		for(int level = this.levels.size() - 2; level >= 0; level--) {
+			CorrelationMatrix fine = this.levels.get(level);
+			int[] mapping = this.mappings.get(level);
+			int[] labels = new int[fine.getSize()];
+			for(int i = 0; i < labels.length; i++)
+				labels[i] = solution.getElement(mapping[i]);
+
+			solution = new Cluster(fine.getSize());
+			solution.setClustering(labels);
+			solution.computeValue(fine);
+			solution.repairNodes(boundaryNodes(fine, labels), fine);
+		}
+
+		return solution;
+	}
+
+
+	/**
+	 * Build the levels by contracting matched pairs until the problem is small enough
+	 * or the matching does not shrink it any more.
+	 */
+	private void coarsen() {
+		this.levels = new ArrayList<CorrelationMatrix>();
+		this.mappings = new ArrayList<int[]>();
+		this.levels.add(this.matrix);
+
+		CorrelationMatrix current = this.matrix;
+		while(current.getSize() > this.coarsestSize) {
+			int[] mapping = new int[current.getSize()];
+			int coarseSize = this.match(current, mapping);
+			// stop if less than a tenth of the nodes could be contracted
+			if(coarseSize > current.getSize() - current.getSize() / 10 || coarseSize == current.getSize())
+				break;
+			current = contract(current, mapping, coarseSize);
+			this.mappings.add(mapping);
+			this.levels.add(current);
+		}
+	}
+
+
+	/**
+	 * Heavy edge matching: visiting the nodes in random order, match every unmatched node with the unmatched
+	 * neighbour having the strongest positive edge.
+	 * @param matrix - the matrix of the level
+	 * @param mapping - filled with the coarse node of every node
+	 * @return the number of coarse nodes.
+	 */
+	private int match(CorrelationMatrix matrix, int[] mapping) {
+		int size = matrix.getSize();
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++) {
+			order[i] = i;
+			mapping[i] = -1;
+		}
+		for(int i = size - 1; i > 0; i--) {
+			int j = this.generator.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+
+		int coarseSize = 0;
+		int[] columns = new int[size];
+		double[] weights = new double[size];
+		for(int k = 0; k < size; k++) {
+			int node = order[k];
+			if(mapping[node] != -1)
+				continue;
+			int partner = -1;
+			double strongest = 0.0;
+			int count = matrix.getNeighbours(node, columns, weights);
+			for(int e = 0; e < count; e++)
+				if(mapping[columns[e]] == -1 && weights[e] > strongest) {
+					partner = columns[e];
+					strongest = weights[e];
+				}
+			mapping[node] = coarseSize;
+			if(partner != -1)
+				mapping[partner] = coarseSize;
+			coarseSize++;
+		}
+		return coarseSize;
+	}
+
+
+	/**
+	 * Contract the matched nodes. The weight between two coarse nodes is the sum of the weights between
+	 * their members, which keeps the difference between joining and cutting them, so the objective of
+	 * the coarse level only differs from the fine one by the constant error inside the coarse nodes.
+	 * The coarse level is built from the edge list of the fine one, so it stays sparse.
+	 * @param matrix - the matrix of the level
+	 * @param mapping - the coarse node of every node
+	 * @param coarseSize - the number of coarse nodes
+	 * @return the coarse matrix.
+	 */
+	private static SparseCorrelationMatrix contract(CorrelationMatrix matrix, int[] mapping, int coarseSize) {
+		int size = matrix.getSize(), count = 0;
+		int[] columns = new int[size];
+		double[] weights = new double[size];
+		int[] from = new int[16], to = new int[16];
+		float[] weight = new float[16];
+		for(int i = 0; i < size; i++) {
+			int neighbours = matrix.getNeighbours(i, columns, weights);
+			for(int e = 0; e < neighbours; e++) {
+				int j = columns[e];
+				if(j < i || mapping[i] == mapping[j])
+					continue;
+				if(count == from.length) {
+					from = Arrays.copyOf(from, 2 * count);
+					to = Arrays.copyOf(to, 2 * count);
+					weight = Arrays.copyOf(weight, 2 * count);
+				}
+				from[count] = mapping[i];
+				to[count] = mapping[j];
+				weight[count] = (float)weights[e];
+				count++;
+			}
+		}
+		// the repeated coarse edges are summed
+		return new SparseCorrelationMatrix(coarseSize, from, to, weight, count);
+	}
+
+
+	/**
+	 * Collect the nodes having an edge with an error: a cut positive edge or a negative edge inside their cluster.
+	 * Moving any other node can not lower the error, so only these nodes are refined.
+	 * @param matrix - the matrix of the level
+	 * @param labels - the projected labels
+	 * @return the boundary nodes.
+	 */
+	private static ArrayList<Integer> boundaryNodes(CorrelationMatrix matrix, int[] labels) {
+		int size = matrix.getSize();
+		int[] columns = new int[size];
+		double[] weights = new double[size];
+		ArrayList<Integer> nodes = new ArrayList<Integer>();
+		for(int i = 0; i < size; i++) {
+			int count = matrix.getNeighbours(i, columns, weights);
+			for(int e = 0; e < count; e++)
+				if(CorrelationMatrix.error(weights[e], labels[i] == labels[columns[e]]) > 0) {
+					nodes.add(i);
+					break;
+				}
+		}
+		return nodes;
+	}
+
+
+	/**
+	 * Set the seed of the random number generator used by the matching.
+	 * @param seed - the seed
+	 */
+	public void setSeed(long seed) {
+		this.generator.setSeed(seed);
+	}
+
+
+	/**
+	 * Get the number of levels of the last solve, including the original problem.
+	 * @return the number of levels.
+	 */
+	public int getNumberOfLevels() {
+		return this.levels == null ? 0 : this.levels.size();
+	}
+
+}
@@ -0,0 +1,66 @@
+import java.util.Random;
+
+
+public abstract class NodeOrder {
+
+	/**
+	 * Compute the order in which the ants visit the nodes.
+	 * @param matrix - the correlation matrix
+	 * @param generator - the random number generator
+	 * @return a permutation of the nodes.
+	 */
+	public abstract int[] order(CorrelationMatrix matrix, Random generator);
+
+
+	/**
+	 * Tell if the order only depends on the matrix, so it can be computed once.
+	 * @return true for a fixed order.
+	 */
+	public boolean isFixed() {
+		return true;
+	}
+
+
+	/**
+	 * Map a clustering of a permuted matrix back to the original nodes.
+	 * @param clustering - the clustering of the matrix permuted by order
+	 * @param order - the permutation, the node at position k is the original node order[k]
+	 * @return the clustering of the original matrix.
+	 */
+	public static Cluster restore(Cluster clustering, int[] order) {
+		int[] labels = new int[order.length];
+		for(int k = 0; k < order.length; k++)
+			labels[order[k]] = clustering.getElement(k);
+		Cluster restored = new Cluster(order.length);
+		restored.setClustering(labels);
+		if(clustering.isComputed())
+			restored.setValue(clustering.getValue());
+		return restored;
+	}
+
+
+	/**
+	 * Build the lists of the neighbours, connected by non-zero edges.
+	 * @param matrix - the correlation matrix
+	 * @param start - filled with the first position of every node, it needs size + 1 elements
+	 * @return the neighbours of the nodes one after the other.
+	 */
+	protected static int[] neighbours(CorrelationMatrix matrix, int[] start) {
+		int size = matrix.getSize();
+		Seeder.Edges edges = Seeder.collectEdges(matrix);
+		for(int k = 0; k < edges.count; k++) {
+			start[edges.from[k] + 1]++;
+			start[edges.to[k] + 1]++;
+		}
+		for(int i = 0; i < size; i++)
+			start[i + 1] += start[i];
+		int[] neighbours = new int[start[size]];
+		int[] fill = new int[size];
+		for(int k = 0; k < edges.count; k++) {
+			neighbours[start[edges.from[k]] + fill[edges.from[k]]++] = edges.to[k];
+			neighbours[start[edges.to[k]] + fill[edges.to[k]]++] = edges.from[k];
+		}
+		return neighbours;
+	}
+
+}
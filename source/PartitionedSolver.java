@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class PartitionedSolver {
+
+	private CorrelationMatrix matrix;
+	private int size, numberOfAnts, maxIterations, threads;
+	private double alpha, beta, rho;
+	private boolean local;
+	private ArrayList<int[]> blocks;
+
+
+	/**
+	 * Constructor. Creates a solver which splits the problem into blocks and solves them separately.
+	 * @param matrix - the correlation matrix
+	 * @param number - number of ants per block
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations per block
+	 * @param local - use only the neighbour labels while building the solutions
+	 * @param threads - number of blocks solved at the same time
+	 */
+	public PartitionedSolver(CorrelationMatrix matrix, int number, double alpha, double beta, double rho, int maxIterations, boolean local, int threads) {
+		this.matrix = matrix;
+		this.size = matrix.getSize();
+		this.numberOfAnts = number;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.rho = rho;
+		this.maxIterations = maxIterations;
+		this.local = local;
+		this.threads = threads;
+	}
+
+
+	/**
+	 * Split the nodes into the connected components of the positive edges. There is an optimal clustering
+	 * in which no cluster spans two components, since such a cluster can be split along the components
+	 * without losing a positive edge.
+	 * @return the blocks, each one containing its nodes in increasing order.
+	 */
+	public ArrayList<int[]> computeBlocks() {
+		// union-find over the positive edges
+		int[] parent = new int[this.size];
+		for(int i = 0; i < this.size; i++)
+			parent[i] = i;
+		int[] columns = new int[this.size];
+		double[] weights = new double[this.size];
+		for(int i = 0; i < this.size; i++) {
+			int count = this.matrix.getNeighbours(i, columns, weights);
+			for(int k = 0; k < count; k++)
+				if(columns[k] > i && weights[k] > 0) {
+					int a = find(parent, i), b = find(parent, columns[k]);
+					if(a != b)
+						parent[b] = a;
+				}
+		}
+
+		// count the members of the components...
+		int[] counter = new int[this.size];
+		for(int i = 0; i < this.size; i++)
+			counter[find(parent, i)]++;
+
+		// ...and collect them
+		int[][] members = new int[this.size][];
+		ArrayList<int[]> blocks = new ArrayList<int[]>();
+		for(int i = 0; i < this.size; i++) {
+			int root = find(parent, i);
+			if(members[root] == null) {
+				members[root] = new int[counter[root]];
+				blocks.add(members[root]);
+				counter[root] = 0;
+			}
+			members[root][counter[root]++] = i;
+		}
+
+		this.blocks = blocks;
+		return blocks;
+	}
+
+
+	/**
+	 * Find the root of a node with path halving.
+	 */
+	private static int find(int[] parent, int node) {
+		while(parent[node] != node) {
+			parent[node] = parent[parent[node]];
+			node = parent[node];
+		}
+		return node;
+	}
+
+
+	/**
+	 * Solve the problem: split it into blocks and solve the blocks in parallel with their own Ant System.
+	 * No positive edge joins two blocks, so moving a node to a cluster of another block can not lower the error,
+	 * and the clusterings of the blocks are put together as they are.
+	 * @return a Cluster containing the results
+	 * @throws InterruptedException
+	 * @throws ExecutionException if solving a block failed
+	 */
+	public Cluster solve() throws InterruptedException, ExecutionException {
+		this.computeBlocks();
+		int[] labels = new int[this.size];
+		double value = 0.0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		try {
+			ArrayList<Future<Cluster>> results = new ArrayList<Future<Cluster>>();
+			for(int b = 0; b < this.blocks.size(); b++) {
+				final int[] block = this.blocks.get(b);
+				// a block of one or two nodes is a single cluster
+				if(block.length <= 2) {
+					results.add(null);
+					continue;
+				}
+				results.add(executor.submit(new Callable<Cluster>() {
+					public Cluster call() throws CloneNotSupportedException {
+						return PartitionedSolver.this.solveBlock(block);
+					}
+				}));
+			}
+
+			// label every cluster by one of the nodes of its block, so the labels stay distinct
+			for(int b = 0; b < this.blocks.size(); b++) {
+				int[] block = this.blocks.get(b);
+				if(results.get(b) == null)
+					for(int i = 0; i < block.length; i++)
+						labels[block[i]] = block[0];
+				else {
+					Cluster part = results.get(b).get();
+					for(int i = 0; i < block.length; i++)
+						labels[block[i]] = block[part.getElement(i)];
+					value += part.getValue();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// there are no positive edges between the blocks, so the error is the sum of the errors of the blocks
+		Cluster solution = new Cluster(this.size);
+		solution.setClustering(labels);
+		solution.setValue(value);
+		return solution;
+	}
+
+
+	/**
+	 * Solve a single block with its own Ant System.
+	 * @param block - the nodes of the block
+	 * @return the clustering of the block, labelled by the positions in the block
+	 * @throws CloneNotSupportedException
+	 */
+	private Cluster solveBlock(int[] block) throws CloneNotSupportedException {
+		// the block keeps the storage and the weights of the matrix
+		CorrelationMatrix part = this.matrix.subMatrix(block);
+		AntSystem system = new AntSystem(part, this.numberOfAnts, this.alpha, this.beta, this.rho, this.maxIterations, this.local);
+		Cluster result = system.solve();
+		result.makeUniform();
+		return result;
+	}
+
+
+	/**
+	 * Get the blocks of the last solve.
+	 * @return the blocks, or null before the first solve.
+	 */
+	public ArrayList<int[]> getBlocks() {
+		return blocks;
+	}
+
+}
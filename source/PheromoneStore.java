@@ -0,0 +1,120 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class PheromoneStore {
+
+	private double[][] levels;
+	private int size;
+	private double factor;
+
+	/*
+	 * Evaporation is lazy: evaporate only counts the rounds, and a row catches up with the rounds it missed
+	 * the next time it is read or deposited on. The rows are guarded by a fixed number of lock stripes.
+	 */
+	private AtomicLong rounds = new AtomicLong();
+	private long[] rowRounds;
+	private Object[] stripes;
+
+	private static final int STRIPES = 64;
+
+
+	/**
+	 * Constructor. Creates a store shared by ants working asynchronously on a pheromone matrix.
+	 * @param levels - the pheromone matrix, it may be larger than the problem
+	 * @param size - size of the problem
+	 * @param rho - decay factor
+	 */
+	public PheromoneStore(double[][] levels, int size, double rho) {
+		this.levels = levels;
+		this.size = size;
+		this.factor = 1.0 - rho;
+		this.rowRounds = new long[size];
+		this.stripes = new Object[Math.min(STRIPES, Math.max(size, 1))];
+		for(int i = 0; i < this.stripes.length; i++)
+			this.stripes[i] = new Object();
+	}
+
+
+	/**
+	 * Evaporate every row in constant time. The rows are only multiplied when they are next used.
+	 */
+	public void evaporate() {
+		this.rounds.incrementAndGet();
+	}
+
+
+	/**
+	 * Bring a row up to date, e.g. before the matrix is used without the store. Use copyRow to read a row
+	 * while the ants are depositing.
+	 * @param row - the row
+	 */
+	public void synchronizeRow(int row) {
+		long current = this.rounds.get();
+		synchronized(this.stripes[row % this.stripes.length]) {
+			this.catchUp(row, current);
+		}
+	}
+
+
+	/**
+	 * Copy a row while holding its lock, after bringing it up to date, so the copy is not torn by a deposit.
+	 * @param row - the row
+	 * @param into - receives the levels, at least size long
+	 */
+	public void copyRow(int row, double[] into) {
+		long current = this.rounds.get();
+		synchronized(this.stripes[row % this.stripes.length]) {
+			this.catchUp(row, current);
+			System.arraycopy(this.levels[row], 0, into, 0, this.size);
+		}
+	}
+
+
+	/**
+	 * Bring every row up to date, e.g. before the matrix is used without the store.
+	 */
+	public void synchronizeAll() {
+		for(int i = 0; i < this.size; i++)
+			this.synchronizeRow(i);
+	}
+
+
+	/**
+	 * Deposit pheromone on the labels of a clustering, row by row, without stopping the other ants.
+	 * @param clustering - the clustering
+	 * @param amount - the amount of the deposit
+	 */
+	public void deposit(Cluster clustering, double amount) {
+		long current = this.rounds.get();
+		for(int i = 0; i < this.size; i++)
+			synchronized(this.stripes[i % this.stripes.length]) {
+				this.catchUp(i, current);
+				this.levels[i][clustering.getElement(i)] += amount;
+			}
+	}
+
+
+	/**
+	 * Apply the missed evaporation rounds to a row. The caller holds the lock of the row.
+	 */
+	private void catchUp(int row, long current) {
+		long missed = current - this.rowRounds[row];
+		if(missed <= 0)
+			return;
+		double remaining = Math.pow(this.factor, missed);
+		double[] levels = this.levels[row];
+		for(int j = 0; j < this.size; j++)
+			levels[j] *= remaining;
+		this.rowRounds[row] = current;
+	}
+
+
+	/**
+	 * Get the pheromone matrix. A row is only up to date after synchronizeRow.
+	 * @return the pheromone levels.
+	 */
+	public double[][] getLevels() {
+		return levels;
+	}
+
+}
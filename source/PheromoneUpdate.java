@@ -0,0 +1,68 @@
+public abstract class PheromoneUpdate {
+
+	// the smallest error used for a deposit, errors below it would deposit an infinite amount
+	protected static final double MIN_ERROR = 1e-9;
+
+	/**
+	 * Evaporate and deposit pheromone at the end of an iteration.
+	 * @param pheromone - the pheromone matrix, it may be larger than the problem
+	 * @param size - size of the problem
+	 * @param population - the solutions of the ants in the iteration
+	 * @param best - the best solution found so far
+	 * @param rho - decay factor
+	 */
+	public abstract void update(double[][] pheromone, int size, Population population, Cluster best, double rho);
+
+
+	/**
+	 * Multiply every pheromone level by a factor.
+	 * @param pheromone - the pheromone matrix
+	 * @param size - size of the problem
+	 * @param factor - the remaining part of the pheromone
+	 */
+	protected void evaporate(double[][] pheromone, int size, double factor) {
+		for(int i = 0; i < size; i++)
+			for(int j = 0; j < size; j++)
+				pheromone[i][j] *= factor;
+	}
+
+
+	/**
+	 * Deposit pheromone on the labels of a clustering. Only one entry per row is touched,
+	 * so a deposit costs O(n).
+	 * @param pheromone - the pheromone matrix
+	 * @param clustering - the clustering
+	 * @param amount - the amount of the deposit
+	 */
+	protected void deposit(double[][] pheromone, Cluster clustering, double amount) {
+		for(int i = 0; i < clustering.getSize(); i++)
+			pheromone[i][clustering.getElement(i)] += amount;
+	}
+
+
+	/**
+	 * Deposit pheromone on the labels of a solution in the population.
+	 * @param pheromone - the pheromone matrix
+	 * @param population - the population
+	 * @param k - the index of the ant
+	 * @param amount - the amount of the deposit
+	 */
+	protected void deposit(double[][] pheromone, Population population, int k, double amount) {
+		int[] labels = population.getLabels();
+		int offset = population.getOffset(k);
+		for(int i = 0; i < population.getSize(); i++)
+			pheromone[i][labels[offset + i]] += amount;
+	}
+
+
+	/**
+	 * The deposit belonging to an error value: 1 / error, as in the original Ant System. Only an error of zero
+	 * is raised to MIN_ERROR, so a perfect clustering deposits a large but finite amount.
+	 * @param value - the error of the clustering
+	 * @return the amount of the deposit.
+	 */
+	protected double amount(double value) {
+		return 1.0 / Math.max(value, MIN_ERROR);
+	}
+
+}
@@ -0,0 +1,64 @@
+import java.util.Random;
+
+
+public class PivotSeeder extends Seeder {
+
+	/**
+	 * Randomised pivot clustering (KwikCluster): visiting the nodes in random order, every node which is not
+	 * clustered yet opens a cluster with its positive neighbours which are not clustered yet.
+	 * Apart from reading the edges it runs in O(n + m).
+	 */
+	@Override
+	public Cluster seed(CorrelationMatrix matrix, Random generator) {
+		int size = matrix.getSize();
+		Edges edges = collectEdges(matrix);
+
+		// compressed lists of the positive neighbours
+		int[] start = new int[size + 1];
+		for(int k = 0; k < edges.count; k++)
+			if(edges.weight[k] > 0) {
+				start[edges.from[k] + 1]++;
+				start[edges.to[k] + 1]++;
+			}
+		for(int i = 0; i < size; i++)
+			start[i + 1] += start[i];
+		int[] neighbours = new int[start[size]];
+		int[] fill = new int[size];
+		for(int k = 0; k < edges.count; k++)
+			if(edges.weight[k] > 0) {
+				neighbours[start[edges.from[k]] + fill[edges.from[k]]++] = edges.to[k];
+				neighbours[start[edges.to[k]] + fill[edges.to[k]]++] = edges.from[k];
+			}
+
+		// random order of the pivots
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++)
+			order[i] = i;
+		for(int i = size - 1; i > 0; i--) {
+			int j = generator.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+
+		int[] labels = new int[size];
+		boolean[] clustered = new boolean[size];
+		for(int k = 0; k < size; k++) {
+			int pivot = order[k];
+			if(clustered[pivot])
+				continue;
+			clustered[pivot] = true;
+			labels[pivot] = pivot;
+			for(int e = start[pivot]; e < start[pivot + 1]; e++)
+				if(!(clustered[neighbours[e]])) {
+					clustered[neighbours[e]] = true;
+					labels[neighbours[e]] = pivot;
+				}
+		}
+
+		Cluster clustering = new Cluster(size);
+		clustering.setClustering(labels);
+		return clustering;
+	}
+
+}
@@ -0,0 +1,371 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class PlantedPartitionGenerator {
+
+	private int size, clusters;
+	private long seed;
+
+	// shape of the instance
+	private double sizeExponent;
+	private double averageDegree = 10.0;
+	private double degreeExponent;
+	private double mixing = 0.2;
+	private double intraNoise = 0.1, interNoise = 0.1;
+
+	/*
+	 * The planted clusters occupy consecutive ranges of logical nodes, clusterStart[c] .. clusterStart[c + 1] - 1,
+	 * and a random permutation gives the real node of every logical node, so the node ids do not reveal the
+	 * clusters. The expected degrees are kept as prefix sums in logical order for weighted sampling.
+	 */
+	private int[] clusterStart;
+	private int[] clusterOf;
+	private int[] node;
+	private double[] cumulative;
+
+	// number of logical nodes generated by one task
+	private static final int BLOCK = 4096;
+	// identifies binary edge lists
+	public static final int BINARY_MAGIC = 0x43454C31;
+
+
+	/**
+	 * Constructor. Creates a generator of signed graphs with planted clusters. The shape of the graphs
+	 * can be changed with the setters before generating.
+	 * @param size - number of nodes
+	 * @param clusters - number of planted clusters, at most the number of nodes
+	 * @param seed - the seed, equal seeds and settings give equal instances on any number of threads
+	 */
+	public PlantedPartitionGenerator(int size, int clusters, long seed) {
+		this.size = size;
+		this.clusters = Math.max(1, Math.min(clusters, size));
+		this.seed = seed;
+	}
+
+
+	/**
+	 * Set the distribution of the cluster sizes: cluster c gets a share proportional to (c + 1)^-exponent.
+	 * @param exponent - 0 for equal sizes, larger values for a few large and many small clusters
+	 */
+	public void setClusterSizeExponent(double exponent) {
+		this.sizeExponent = exponent;
+	}
+
+
+	/**
+	 * Set the distribution of the degrees. The expected degrees follow a power law with the given exponent,
+	 * and edges are drawn between nodes in proportion to their expected degrees.
+	 * @param averageDegree - the average degree
+	 * @param exponent - the exponent of the power law, at most 2 gives equal expected degrees
+	 */
+	public void setDegrees(double averageDegree, double exponent) {
+		this.averageDegree = averageDegree;
+		this.degreeExponent = exponent;
+	}
+
+
+	/**
+	 * Set the share of the edges going between different clusters.
+	 * @param mixing - the probability that an edge leaves the cluster of its node
+	 */
+	public void setMixing(double mixing) {
+		this.mixing = mixing;
+	}
+
+
+	/**
+	 * Set the noise of the signs.
+	 * @param intraNoise - the probability that an edge inside a cluster is negative
+	 * @param interNoise - the probability that an edge between clusters is positive
+	 */
+	public void setNoise(double intraNoise, double interNoise) {
+		this.intraNoise = intraNoise;
+		this.interNoise = interNoise;
+	}
+
+
+	/**
+	 * Draw the planted clusters, the node permutation and the expected degrees.
+	 */
+	private void plant() {
+		Random generator = new Random(this.seed);
+
+		// cluster sizes, every cluster gets at least one node
+		double[] share = new double[this.clusters];
+		double total = 0.0;
+		for(int c = 0; c < this.clusters; c++)
+			total += share[c] = Math.pow(c + 1, -this.sizeExponent);
+		this.clusterStart = new int[this.clusters + 1];
+		int free = this.size - this.clusters;
+		for(int c = 0; c < this.clusters; c++)
+			this.clusterStart[c + 1] = this.clusterStart[c] + 1 + (int)(free * share[c] / total);
+		// the rounded off nodes go to the largest cluster, the rest is shifted
+		int missing = this.size - this.clusterStart[this.clusters];
+		for(int c = 1; c <= this.clusters; c++)
+			this.clusterStart[c] += missing;
+		this.clusterOf = new int[this.size];
+		for(int c = 0; c < this.clusters; c++)
+			Arrays.fill(this.clusterOf, this.clusterStart[c], this.clusterStart[c + 1], c);
+
+		// hide the clusters behind a random permutation
+		this.node = new int[this.size];
+		for(int i = 0; i < this.size; i++)
+			this.node[i] = i;
+		for(int i = this.size - 1; i > 0; i--) {
+			int j = generator.nextInt(i + 1);
+			int temp = this.node[i];
+			this.node[i] = this.node[j];
+			this.node[j] = temp;
+		}
+
+		// expected degrees: a Pareto distribution with the given mean, or the mean itself
+		this.cumulative = new double[this.size + 1];
+		double shape = this.degreeExponent - 1.0;
+		double minimum = this.degreeExponent > 2.0 ? this.averageDegree * (shape - 1.0) / shape : this.averageDegree;
+		for(int i = 0; i < this.size; i++) {
+			double degree = this.degreeExponent > 2.0 ? minimum * Math.pow(1.0 - generator.nextDouble(), -1.0 / shape) : minimum;
+			this.cumulative[i + 1] = this.cumulative[i] + Math.min(degree, this.size - 1);
+		}
+	}
+
+
+	/**
+	 * Get the planted clustering.
+	 * @return the ground truth, the label of a node is its planted cluster.
+	 */
+	public Cluster getGroundTruth() {
+		if(this.node == null)
+			this.plant();
+		int[] labels = new int[this.size];
+		for(int i = 0; i < this.size; i++)
+			labels[this.node[i]] = this.clusterOf[i];
+		Cluster truth = new Cluster(this.size);
+		truth.setClustering(labels);
+		return truth;
+	}
+
+
+	/**
+	 * The edges generated by one task, as (from, to, sign) triples of real nodes.
+	 */
+	private static class Edges {
+		private int[] from = new int[1024], to = new int[1024];
+		private byte[] signs = new byte[1024];
+		private int count;
+
+		private void add(int i, int j, int sign) {
+			if(this.count == this.from.length) {
+				this.from = Arrays.copyOf(this.from, 2 * this.count);
+				this.to = Arrays.copyOf(this.to, 2 * this.count);
+				this.signs = Arrays.copyOf(this.signs, 2 * this.count);
+			}
+			this.from[this.count] = i;
+			this.to[this.count] = j;
+			this.signs[this.count] = (byte)sign;
+			this.count++;
+		}
+	}
+
+
+	/**
+	 * Generate the edges of a block of logical nodes. Every node starts half of its expected degree,
+	 * so the degrees add up with the edges started by the other ends. A block only depends on the seed
+	 * and its index.
+	 * @param block - the index of the block
+	 * @return the edges.
+	 */
+	private Edges generateBlock(int block) {
+		Random generator = new Random(this.seed + (block + 1) * 0x9E3779B97F4A7C15L);
+		Edges edges = new Edges();
+		int end = Math.min(this.size, (block + 1) * BLOCK);
+		for(int i = block * BLOCK; i < end; i++) {
+			int c = this.clusterOf[i];
+			double half = (this.cumulative[i + 1] - this.cumulative[i]) / 2.0;
+			int count = (int)half + (generator.nextDouble() < half - (int)half ? 1 : 0);
+			boolean alone = this.clusterStart[c + 1] - this.clusterStart[c] == 1;
+			for(int k = 0; k < count; k++) {
+				boolean inside = !alone && generator.nextDouble() >= this.mixing;
+				int j;
+				if(inside)
+					j = this.sample(generator, this.clusterStart[c], this.clusterStart[c + 1]);
+				else {
+					// between clusters, retry a few times if the partner is in the same cluster
+					j = this.sample(generator, 0, this.size);
+					for(int retry = 0; retry < 8 && this.clusterOf[j] == c && this.clusters > 1; retry++)
+						j = this.sample(generator, 0, this.size);
+				}
+				if(j == i)
+					continue;
+				boolean same = this.clusterOf[j] == c;
+				int sign = same ? (generator.nextDouble() < this.intraNoise ? -1 : 1) : (generator.nextDouble() < this.interNoise ? 1 : -1);
+				edges.add(this.node[i], this.node[j], sign);
+			}
+		}
+		return edges;
+	}
+
+
+	/**
+	 * Draw a logical node from a range in proportion to the expected degrees.
+	 */
+	private int sample(Random generator, int from, int to) {
+		double r = this.cumulative[from] + generator.nextDouble() * (this.cumulative[to] - this.cumulative[from]);
+		int low = from, high = to - 1;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(this.cumulative[middle + 1] > r)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return low;
+	}
+
+
+	/**
+	 * Generate the instance in memory. Repeated edges are summed.
+	 * @param threads - number of threads
+	 * @return the sparse matrix.
+	 * @throws InterruptedException
+	 */
+	public SparseCorrelationMatrix generate(int threads) throws InterruptedException {
+		final ArrayList<Edges> blocks = new ArrayList<Edges>();
+		try {
+			this.run(threads, new Sink() {
+				public void accept(Edges edges) {
+					blocks.add(edges);
+				}
+			});
+		} catch (IOException e) {
+			// nothing is written
+			throw new RuntimeException(e);
+		}
+
+		int count = 0;
+		for(int b = 0; b < blocks.size(); b++)
+			count += blocks.get(b).count;
+		int[] from = new int[count], to = new int[count];
+		float[] weights = new float[count];
+		int position = 0;
+		for(int b = 0; b < blocks.size(); b++) {
+			Edges edges = blocks.get(b);
+			System.arraycopy(edges.from, 0, from, position, edges.count);
+			System.arraycopy(edges.to, 0, to, position, edges.count);
+			for(int k = 0; k < edges.count; k++)
+				weights[position + k] = edges.signs[k];
+			position += edges.count;
+		}
+		return new SparseCorrelationMatrix(this.size, from, to, weights, count);
+	}
+
+
+	/**
+	 * Stream the instance as a sparse text edge list: a "# size" line, then an "i j sign" line per edge.
+	 * It can be read with SparseCorrelationMatrix(filename, 0).
+	 * @param filename - the output file
+	 * @param threads - number of threads
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void writeText(String filename, int threads) throws IOException, InterruptedException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
+		try {
+			out.write(("# " + this.size + "\n").getBytes("US-ASCII"));
+			this.run(threads, new Sink() {
+				public void accept(Edges edges) throws IOException {
+					StringBuilder text = new StringBuilder(edges.count * 16);
+					for(int k = 0; k < edges.count; k++)
+						text.append(edges.from[k]).append(' ').append(edges.to[k]).append(' ').append(edges.signs[k]).append('\n');
+					out.write(text.toString().getBytes("US-ASCII"));
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Stream the instance as a binary edge list: the magic number and the size, then an (int from, int to,
+	 * float weight) record per edge until the end of the file. It can be read with SparseCorrelationMatrix.readBinary.
+	 * @param filename - the output file
+	 * @param threads - number of threads
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void writeBinary(String filename, int threads) throws IOException, InterruptedException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(this.size);
+			this.run(threads, new Sink() {
+				public void accept(Edges edges) throws IOException {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream(edges.count * 12);
+					DataOutputStream records = new DataOutputStream(bytes);
+					for(int k = 0; k < edges.count; k++) {
+						records.writeInt(edges.from[k]);
+						records.writeInt(edges.to[k]);
+						records.writeFloat(edges.signs[k]);
+					}
+					bytes.writeTo(out);
+				}
+			});
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Receives the generated blocks in order.
+	 */
+	private interface Sink {
+		void accept(Edges edges) throws IOException;
+	}
+
+
+	/**
+	 * Generate the blocks on a pool of threads and pass them to the sink in their order. At most two blocks
+	 * per thread are held in memory, so the instance may be much larger than the memory.
+	 */
+	private void run(int threads, Sink sink) throws IOException, InterruptedException {
+		if(this.node == null)
+			this.plant();
+		int blocks = (this.size + BLOCK - 1) / BLOCK;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+		LinkedList<Future<Edges>> pending = new LinkedList<Future<Edges>>();
+		try {
+			int next = 0;
+			while(next < blocks || !(pending.isEmpty())) {
+				while(next < blocks && pending.size() < 2 * Math.max(threads, 1)) {
+					final int block = next++;
+					pending.add(executor.submit(new Callable<Edges>() {
+						public Edges call() {
+							return PlantedPartitionGenerator.this.generateBlock(block);
+						}
+					}));
+				}
+				sink.accept(pending.removeFirst().get());
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+public class Population {
+
+	/*
+	 * The solutions of the ants, in one buffer: the label of node i in the solution of ant k is at k * size + i.
+	 * The clusterings of the ants are kept in their rows (see bind), so they build their solutions in place
+	 * and the population is valid until the ants start building their next solutions.
+	 */
+	private int[] labels;
+	private double[] values;
+	private int count;
+	private int size;
+
+
+	/**
+	 * Constructor. Creates an empty population.
+	 * @param count - number of ants
+	 * @param size - size of the problem
+	 */
+	public Population(int count, int size) {
+		this.labels = new int[count * size];
+		this.values = new double[count];
+		this.count = count;
+		this.size = size;
+	}
+
+
+	/**
+	 * Change the number of ants or the size of the problem, reusing the arrays if they are large enough.
+	 * The buffer may be replaced, so every clustering has to be bound again afterwards.
+	 * @param count - number of ants
+	 * @param size - size of the problem
+	 */
+	public void resize(int count, int size) {
+		if(this.labels.length < count * size)
+			this.labels = new int[count * size];
+		if(this.values.length < count)
+			this.values = Arrays.copyOf(this.values, count);
+		this.count = count;
+		this.size = size;
+	}
+
+
+	/**
+	 * Keep the labels of a clustering in the row of an ant. A clustering of the size of the problem is copied
+	 * into the row, one of another size is expected to be resized afterwards.
+	 * @param k - the index of the ant
+	 * @param clustering - its clustering
+	 */
+	public void bind(int k, Cluster clustering) {
+		int offset = k * this.size;
+		if(clustering.getSize() == this.size)
+			System.arraycopy(clustering.getClustering(), clustering.getOffset(), this.labels, offset, this.size);
+		clustering.setStorage(this.labels, offset);
+	}
+
+
+	/**
+	 * Store the goodness of the solution of an ant. Its labels are already in its row.
+	 * @param k - the index of the ant
+	 * @param value - its goodness
+	 */
+	public void store(int k, double value) {
+		this.values[k] = value;
+	}
+
+
+	/**
+	 * Copy a stored solution into a clustering without allocating.
+	 * @param k - the index of the ant
+	 * @param clustering - the clustering to overwrite
+	 */
+	public void copyTo(int k, Cluster clustering) {
+		clustering.copyFrom(this.labels, k * this.size, this.size);
+		clustering.setValue(this.values[k]);
+	}
+
+
+	/**
+	 * Get the index of the best solution.
+	 * @return the ant with the smallest error, or -1 for an empty population.
+	 */
+	public int best() {
+		int best = -1;
+		for(int k = 0; k < this.count; k++)
+			if(best == -1 || this.values[k] < this.values[best])
+				best = k;
+		return best;
+	}
+
+
+	/**
+	 * Order the ants by their error.
+	 * @return the indices of the ants from the best to the worst.
+	 */
+	public int[] rank() {
+		Integer[] order = new Integer[this.count];
+		for(int k = 0; k < this.count; k++)
+			order[k] = k;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(Population.this.values[a], Population.this.values[b]);
+			}
+		});
+		int[] ranked = new int[this.count];
+		for(int k = 0; k < this.count; k++)
+			ranked[k] = order[k];
+		return ranked;
+	}
+
+
+	/**
+	 * Get the label of a node in the solution of an ant.
+	 * @param k - the index of the ant
+	 * @param i - the node
+	 * @return the label.
+	 */
+	public int getLabel(int k, int i) {
+		return this.labels[k * this.size + i];
+	}
+
+
+	/**
+	 * Get the buffer of the solutions, see getOffset.
+	 * @return the labels of every ant.
+	 */
+	public int[] getLabels() {
+		return labels;
+	}
+
+
+	/**
+	 * Get the position of the solution of an ant in the buffer.
+	 * @param k - the index of the ant
+	 * @return the position of the label of node 0.
+	 */
+	public int getOffset(int k) {
+		return k * this.size;
+	}
+
+
+	/**
+	 * Get the goodness of the solution of an ant.
+	 * @param k - the index of the ant
+	 * @return the goodness.
+	 */
+	public double getValue(int k) {
+		return this.values[k];
+	}
+
+
+	/**
+	 * Get the number of ants.
+	 * @return the number of stored solutions.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+
+	/**
+	 * Get the size of the problem.
+	 * @return size.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+}
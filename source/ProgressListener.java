@@ -0,0 +1,11 @@
+public abstract class ProgressListener {
+
+	/**
+	 * Called when the best solution of a run improves, and once with the starting solution. In the
+	 * asynchronous mode it is called from the worker threads, one call at a time.
+	 * @param iteration - the iteration in which the solution was found
+	 * @param value - the error of the best solution
+	 */
+	public abstract void improved(int iteration, double value);
+
+}
@@ -0,0 +1,30 @@
+import java.util.Random;
+
+
+public class RandomOrder extends NodeOrder {
+
+	/**
+	 * A new random permutation for every construction, which removes the bias of the index order.
+	 */
+	@Override
+	public int[] order(CorrelationMatrix matrix, Random generator) {
+		int size = matrix.getSize();
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++)
+			order[i] = i;
+		for(int i = size - 1; i > 0; i--) {
+			int j = generator.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
+		return order;
+	}
+
+
+	@Override
+	public boolean isFixed() {
+		return false;
+	}
+
+}
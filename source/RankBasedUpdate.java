@@ -0,0 +1,33 @@
+public class RankBasedUpdate extends PheromoneUpdate {
+
+	// number of ranks receiving pheromone
+	private int ranks;
+
+
+	/**
+	 * Constructor.
+	 * @param ranks - the best ranks - 1 ants and the best solution found so far deposit
+	 */
+	public RankBasedUpdate(int ranks) {
+		this.ranks = ranks;
+	}
+
+
+	/**
+	 * Rank-based Ant System update: the ant at rank r (starting from 1) deposits (ranks - r) / error,
+	 * the best solution found so far deposits ranks / error. The other ants do not deposit.
+	 */
+	@Override
+	public void update(double[][] pheromone, int size, Population population, Cluster best, double rho) {
+		this.evaporate(pheromone, size, 1.0 - rho);
+		
+		// order the ants by their error
+		int[] ordered = population.rank();
+		
+		for(int r = 1; r < this.ranks && r <= ordered.length; r++)
+			this.deposit(pheromone, population, ordered[r - 1], (this.ranks - r) * this.amount(population.getValue(ordered[r - 1])));
+		if(best != null)
+			this.deposit(pheromone, best, this.ranks * this.amount(best.getValue()));
+	}
+
+}
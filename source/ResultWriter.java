@@ -0,0 +1,66 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+public abstract class ResultWriter implements Closeable {
+
+	/**
+	 * Write a solution: its label array and the members of every cluster.
+	 * @param solution - the solution
+	 * @throws IOException
+	 */
+	public abstract void writeSolution(Cluster solution) throws IOException;
+
+
+	/**
+	 * Write the statistics of a run, one value per column.
+	 * @param values - the values
+	 * @throws IOException
+	 */
+	public abstract void writeStatistics(double... values) throws IOException;
+
+
+	/**
+	 * Write the results buffered so far.
+	 * @throws IOException
+	 */
+	public abstract void flush() throws IOException;
+
+
+	/**
+	 * Get the labels of a solution starting at position 0. Only a clustering kept in a shared array is copied.
+	 * @param solution - the solution
+	 * @return the labels.
+	 */
+	protected static int[] labelsOf(Cluster solution) {
+		int offset = solution.getOffset();
+		if(offset == 0)
+			return solution.getClustering();
+		return Arrays.copyOfRange(solution.getClustering(), offset, offset + solution.getSize());
+	}
+
+
+	/**
+	 * Group the nodes by their clusters with a counting sort.
+	 * @param labels - the label array
+	 * @param size - size of the problem
+	 * @param start - filled with the first position of every cluster in the result, it needs size + 1 elements
+	 * @return the nodes ordered by their clusters, ascending inside a cluster.
+	 */
+	protected static int[] groupMembers(int[] labels, int size, int[] start) {
+		for(int i = 0; i <= size; i++)
+			start[i] = 0;
+		for(int i = 0; i < size; i++)
+			start[labels[i] + 1]++;
+		for(int i = 0; i < size; i++)
+			start[i + 1] += start[i];
+
+		int[] members = new int[size];
+		int[] fill = new int[size];
+		for(int i = 0; i < size; i++)
+			members[start[labels[i]] + fill[labels[i]]++] = i;
+		return members;
+	}
+
+}
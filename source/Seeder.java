@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.Random;
+
+
+public abstract class Seeder {
+
+	/**
+	 * Build a starting clustering.
+	 * @param matrix - the correlation matrix
+	 * @param generator - the random number generator
+	 * @return the clustering.
+	 */
+	public abstract Cluster seed(CorrelationMatrix matrix, Random generator);
+
+
+	/**
+	 * The non-zero edges of a matrix, each one listed once with its smaller node first.
+	 */
+	protected static class Edges {
+		protected int count;
+		protected int[] from;
+		protected int[] to;
+		protected double[] weight;
+	}
+
+
+	/**
+	 * Collect the non-zero edges. A sparse matrix is read in O(m), a dense one in O(n^2).
+	 * @param matrix - the correlation matrix
+	 * @return the edges.
+	 */
+	protected static Edges collectEdges(CorrelationMatrix matrix) {
+		Edges edges = new Edges();
+		int size = matrix.getSize();
+		int[] columns = new int[size];
+		double[] weights = new double[size];
+
+		int capacity = 16;
+		edges.from = new int[capacity];
+		edges.to = new int[capacity];
+		edges.weight = new double[capacity];
+		for(int i = 0; i < size; i++) {
+			int count = matrix.getNeighbours(i, columns, weights);
+			for(int k = 0; k < count; k++) {
+				if(columns[k] < i)
+					continue;
+				if(edges.count == capacity) {
+					capacity *= 2;
+					edges.from = Arrays.copyOf(edges.from, capacity);
+					edges.to = Arrays.copyOf(edges.to, capacity);
+					edges.weight = Arrays.copyOf(edges.weight, capacity);
+				}
+				edges.from[edges.count] = i;
+				edges.to[edges.count] = columns[k];
+				edges.weight[edges.count] = weights[k];
+				edges.count++;
+			}
+		}
+		return edges;
+	}
+
+}
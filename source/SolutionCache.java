@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class SolutionCache {
+
+	/*
+	 * The cached clusterings in least recently used order, keyed by their hash.
+	 */
+	private LinkedHashMap<Long, Entry> entries;
+	private int capacity;
+
+	// statistics
+	private long hits;
+	private long misses;
+
+
+	/**
+	 * A cached clustering with its goodness. The labels are kept to tell hash collisions apart.
+	 */
+	private static class Entry {
+		private int[] labels;
+		private double value;
+
+		private Entry(int[] labels, double value) {
+			this.labels = labels;
+			this.value = value;
+		}
+	}
+
+
+	/**
+	 * Constructor. Creates an empty cache.
+	 * @param capacity - the maximal number of cached clusterings, the least recently used one is dropped first
+	 */
+	public SolutionCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return this.size() > SolutionCache.this.capacity;
+			}
+		};
+	}
+
+
+	/**
+	 * Look up the goodness of a clustering. On a hit the goodness is stored in the clustering.
+	 * The clustering should be uniform, otherwise equal clusterings are not recognised.
+	 * @param clustering - the clustering
+	 * @return true if the goodness was found in the cache.
+	 */
+	public synchronized boolean restoreValue(Cluster clustering) {
+		Entry entry = this.entries.get(clustering.getHash());
+		// the labels of a clustering may be part of a longer array
+		int offset = clustering.getOffset();
+		if(entry != null && Arrays.equals(entry.labels, 0, entry.labels.length, clustering.getClustering(), offset, offset + clustering.getSize())) {
+			clustering.setValue(entry.value);
+			this.hits++;
+			return true;
+		}
+		this.misses++;
+		return false;
+	}
+
+
+	/**
+	 * Store the goodness of a computed clustering.
+	 * @param clustering - the clustering
+	 */
+	public synchronized void store(Cluster clustering) {
+		if(clustering.isComputed())
+			this.entries.put(clustering.getHash(), new Entry(Arrays.copyOfRange(clustering.getClustering(), clustering.getOffset(), clustering.getOffset() + clustering.getSize()), clustering.getValue()));
+	}
+
+
+	/**
+	 * Drop every cached clustering, e.g. after the correlation matrix has changed.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+
+	/**
+	 * Get the number of successful lookups.
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	/**
+	 * Get the number of failed lookups.
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	/**
+	 * Get the number of cached clusterings.
+	 * @return the number of entries.
+	 */
+	public synchronized int getSize() {
+		return this.entries.size();
+	}
+
+
+	/**
+	 * Get the maximal number of cached clusterings.
+	 * @return the capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
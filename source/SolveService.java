@@ -0,0 +1,202 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+
+public class SolveService {
+
+	/*
+	 * Every request waits for admission and for its result on a thread of its own, which is cheap since these
+	 * threads only block. The ants run on a bounded pool of carrier threads.
+	 */
+	private ExecutorService requests;
+	private ExecutorService carriers;
+
+	// admission control
+	private long capacity;
+	private long admittedCost;
+	private int maxWaiting;
+	private int waiting;
+
+	// the requests not finished yet; the carriers are shut down after the last one
+	private int active;
+	private boolean stopping;
+
+
+	/**
+	 * Constructor. Creates a service solving requests concurrently.
+	 * @param carriers - number of threads running the ants
+	 * @param capacity - the total estimated cost of the requests solved at the same time
+	 * @param maxWaiting - the number of requests which may wait for admission, further requests are rejected
+	 */
+	public SolveService(int carriers, long capacity, int maxWaiting) {
+		this.requests = Executors.newCachedThreadPool();
+		this.carriers = Executors.newFixedThreadPool(carriers);
+		this.capacity = capacity;
+		this.maxWaiting = maxWaiting;
+	}
+
+
+	/**
+	 * Estimate the cost of a request: every ant visits n nodes with n candidate labels, and evaluates each with an O(n) delta.
+	 * @param size - size of the problem
+	 * @param number - number of ants
+	 * @param maxIterations - maximum number of iterations
+	 * @return the estimated cost, Long.MAX_VALUE if it does not fit into a long.
+	 */
+	public static long estimateCost(int size, int number, int maxIterations) {
+		long cost = multiply(multiply(size, size), size);
+		return multiply(multiply(cost, number), maxIterations);
+	}
+
+
+	/**
+	 * Multiply two non-negative numbers, saturating at Long.MAX_VALUE.
+	 */
+	private static long multiply(long a, long b) {
+		if(b != 0 && a > Long.MAX_VALUE / b)
+			return Long.MAX_VALUE;
+		return a * b;
+	}
+
+
+	/**
+	 * Submit a request. It waits until its estimated cost fits into the capacity, then it is solved until
+	 * the iterations are done or the deadline is reached, whichever comes first. A request reaching its
+	 * deadline while solving returns the best solution found so far.
+	 * @param matrix - the correlation matrix
+	 * @param number - number of ants
+	 * @param alpha - history coefficient
+	 * @param beta - heuristic coefficient
+	 * @param rho - decay factor
+	 * @param maxIterations - maximum number of iterations
+	 * @param local - use only the neighbour labels while building the solutions
+	 * @param timeout - milliseconds until the deadline, 0 for no deadline
+	 * @return the future solution; it fails with a TimeoutException if the request was not admitted before the deadline.
+	 * @throws RejectedExecutionException if too many requests are waiting already, or the service is shut down
+	 */
+	public Future<Cluster> submit(final CorrelationMatrix matrix, final int number, final double alpha, final double beta, final double rho,
+			final int maxIterations, final boolean local, long timeout) {
+		// there is always room for a request alone
+		final long cost = Math.min(estimateCost(matrix.getSize(), number, maxIterations), this.capacity);
+		final long deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000L : 0;
+
+		synchronized(this) {
+			if(this.stopping)
+				throw new RejectedExecutionException("The service is shut down");
+			if(this.waiting >= this.maxWaiting)
+				throw new RejectedExecutionException("Too many waiting requests");
+			this.waiting++;
+			this.active++;
+		}
+
+		return this.requests.submit(new Callable<Cluster>() {
+			public Cluster call() throws Exception {
+				try {
+					return this.solve();
+				} finally {
+					SolveService.this.finished();
+				}
+			}
+
+			private Cluster solve() throws Exception {
+				try {
+					SolveService.this.admit(cost, deadline);
+				} finally {
+					synchronized(SolveService.this) {
+						SolveService.this.waiting--;
+					}
+				}
+
+				Future<Cluster> result = null;
+				try {
+					result = SolveService.this.carriers.submit(new Callable<Cluster>() {
+						public Cluster call() throws CloneNotSupportedException {
+							AntSystem system = new AntSystem(matrix, number, alpha, beta, rho, maxIterations, local);
+							system.setDeadline(deadline);
+							return system.solve();
+						}
+					});
+					return result.get();
+				} catch (InterruptedException e) {
+					// the request was cancelled, stop the ants as well
+					result.cancel(true);
+					throw e;
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof Exception)
+						throw (Exception)e.getCause();
+					throw e;
+				} finally {
+					SolveService.this.release(cost);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Wait until the cost fits into the capacity.
+	 * @throws TimeoutException if the deadline passes first
+	 * @throws InterruptedException
+	 */
+	private synchronized void admit(long cost, long deadline) throws TimeoutException, InterruptedException {
+		while(this.admittedCost + cost > this.capacity) {
+			if(deadline == 0)
+				this.wait();
+			else {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0)
+					throw new TimeoutException("The request was not admitted before its deadline");
+				this.wait(remaining / 1000000L + 1);
+			}
+		}
+		this.admittedCost += cost;
+	}
+
+
+	/**
+	 * Give back the cost of a finished request.
+	 */
+	private synchronized void release(long cost) {
+		this.admittedCost -= cost;
+		this.notifyAll();
+	}
+
+
+	/**
+	 * Count a finished request, and shut the carriers down after the last one if the service is stopping.
+	 */
+	private synchronized void finished() {
+		this.active--;
+		if(this.stopping && this.active == 0)
+			this.carriers.shutdown();
+	}
+
+
+	/**
+	 * Get the total estimated cost of the requests being solved.
+	 * @return the admitted cost.
+	 */
+	public synchronized long getAdmittedCost() {
+		return admittedCost;
+	}
+
+
+	/**
+	 * Stop accepting requests. The submitted ones are still solved, including the ones waiting for admission;
+	 * the carrier threads stop after the last of them.
+	 */
+	public void shutdown() {
+		synchronized(this) {
+			this.stopping = true;
+			if(this.active == 0)
+				this.carriers.shutdown();
+		}
+		this.requests.shutdown();
+	}
+
+}
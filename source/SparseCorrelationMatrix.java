@@ -0,0 +1,446 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+
+public class SparseCorrelationMatrix extends CorrelationMatrix {
+
+	/*
+	 * The edges in compressed rows: the edges of node i are at rowStart[i] .. rowStart[i + 1] - 1,
+	 * ordered by their column. Every edge is stored in both rows.
+	 */
+	private int[] rowStart;
+	private int[] columns;
+	private float[] weights;
+
+
+	/**
+	 * Constructor. Creates a sparse weighted matrix from an edge list. Repeated edges are summed,
+	 * loops are dropped.
+	 * @param size - size of the matrix
+	 * @param from - the first nodes of the edges
+	 * @param to - the second nodes of the edges
+	 * @param weight - the weights of the edges
+	 * @param count - the number of edges
+	 */
+	public SparseCorrelationMatrix(int size, int[] from, int[] to, float[] weight, int count) {
+		super(size, null);
+		this.build(size, from, to, weight, count);
+	}
+
+
+	/**
+	 * Constructor for reading a similarity edge list from a file. The first line may be "# size", every other
+	 * line is "i j score". The weight of an edge is score - threshold, so scores above the threshold attract
+	 * and scores below it repel the nodes. Without a size line the size is the largest node + 1.
+	 * @param filename - the name of the file
+	 * @param threshold - the neutral score
+	 * @throws IOException
+	 */
+	public SparseCorrelationMatrix(String filename, double threshold) throws IOException {
+		super(0, null);
+		int size = -1, count = 0, largest = -1;
+		int[] from = new int[1024], to = new int[1024];
+		float[] weight = new float[1024];
+
+		BufferedReader in = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			while((line = in.readLine()) != null) {
+				StringTokenizer tokens = new StringTokenizer(line, " \t,;");
+				if(!(tokens.hasMoreTokens()))
+					continue;
+				String first = tokens.nextToken();
+				// the size is given in the header
+				if(first.charAt(0) == '#') {
+					if(size == -1 && tokens.hasMoreTokens())
+						size = Integer.parseInt(tokens.nextToken());
+					continue;
+				}
+
+				if(count == from.length) {
+					from = Arrays.copyOf(from, 2 * count);
+					to = Arrays.copyOf(to, 2 * count);
+					weight = Arrays.copyOf(weight, 2 * count);
+				}
+				from[count] = Integer.parseInt(first);
+				to[count] = Integer.parseInt(tokens.nextToken());
+				weight[count] = (float)(Double.parseDouble(tokens.nextToken()) - threshold);
+				largest = Math.max(largest, Math.max(from[count], to[count]));
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+
+		this.build(size == -1 ? largest + 1 : size, from, to, weight, count);
+	}
+
+
+	/**
+	 * Read a binary edge list written by PlantedPartitionGenerator.writeBinary.
+	 * @param filename - the name of the file
+	 * @return the matrix.
+	 * @throws IOException if the file can not be read or is not a binary edge list
+	 */
+	public static SparseCorrelationMatrix readBinary(String filename) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+		try {
+			if(in.readInt() != PlantedPartitionGenerator.BINARY_MAGIC)
+				throw new IOException("Not a binary edge list: " + filename);
+			int size = in.readInt(), count = 0;
+			int[] from = new int[1024], to = new int[1024];
+			float[] weight = new float[1024];
+			while(true) {
+				int i;
+				try {
+					i = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if(count == from.length) {
+					from = Arrays.copyOf(from, 2 * count);
+					to = Arrays.copyOf(to, 2 * count);
+					weight = Arrays.copyOf(weight, 2 * count);
+				}
+				from[count] = i;
+				to[count] = in.readInt();
+				weight[count] = in.readFloat();
+				count++;
+			}
+			return new SparseCorrelationMatrix(size, from, to, weight, count);
+		} finally {
+			in.close();
+		}
+	}
+	
+	
+	/**
+	 * Build the compressed rows.
+	 */
+	private void build(int size, int[] from, int[] to, float[] weight, int count) {
+		this.setSize(size);
+
+		// count the edges of the rows
+		int[] start = new int[size + 1];
+		for(int k = 0; k < count; k++)
+			if(from[k] != to[k]) {
+				start[from[k] + 1]++;
+				start[to[k] + 1]++;
+			}
+		for(int i = 0; i < size; i++)
+			start[i + 1] += start[i];
+
+		// pack the column and the weight into one number, so a row can be sorted by its columns
+		long[] packed = new long[start[size]];
+		int[] fill = Arrays.copyOf(start, size);
+		for(int k = 0; k < count; k++)
+			if(from[k] != to[k]) {
+				packed[fill[from[k]]++] = ((long)to[k] << 32) | (Float.floatToRawIntBits(weight[k]) & 0xFFFFFFFFL);
+				packed[fill[to[k]]++] = ((long)from[k] << 32) | (Float.floatToRawIntBits(weight[k]) & 0xFFFFFFFFL);
+			}
+
+		// sort the rows and sum the repeated edges
+		this.rowStart = new int[size + 1];
+		this.columns = new int[packed.length];
+		this.weights = new float[packed.length];
+		int position = 0;
+		for(int i = 0; i < size; i++) {
+			Arrays.sort(packed, start[i], start[i + 1]);
+			this.rowStart[i] = position;
+			for(int k = start[i]; k < start[i + 1]; k++) {
+				int column = (int)(packed[k] >>> 32);
+				float value = Float.intBitsToFloat((int)packed[k]);
+				if(position > this.rowStart[i] && this.columns[position - 1] == column)
+					this.weights[position - 1] += value;
+				else {
+					this.columns[position] = column;
+					this.weights[position] = value;
+					position++;
+				}
+			}
+		}
+		this.rowStart[size] = position;
+		this.columns = Arrays.copyOf(this.columns, position);
+		this.weights = Arrays.copyOf(this.weights, position);
+	}
+
+
+	/**
+	 * Find the position of an edge.
+	 * @return the position, or -1 if there is no such edge.
+	 */
+	private int find(int i, int j) {
+		int position = Arrays.binarySearch(this.columns, this.rowStart[i], this.rowStart[i + 1], j);
+		return position < 0 ? -1 : position;
+	}
+
+
+	@Override
+	public double getWeight(int i, int j) {
+		int position = this.find(i, j);
+		return position == -1 ? 0.0 : this.weights[position];
+	}
+
+
+	@Override
+	public int getEdge(int i, int j) {
+		double weight = this.getWeight(i, j);
+		return weight > 0 ? 1 : (weight < 0 ? -1 : 0);
+	}
+
+
+	/**
+	 * Set the sign of an edge in both rows. A flipped edge keeps its weight, a missing one is inserted
+	 * with weight 1, and setting 0 keeps the edge with weight 0.
+	 * @return the sign of the previous weight.
+	 */
+	@Override
+	public int setEdge(int i, int j, int value) {
+		int previous = this.getEdge(i, j);
+		if(i != j)
+			this.setWeight(i, j, signedWeight((float)this.getWeight(i, j), value));
+		return previous;
+	}
+
+
+	/**
+	 * Set the weight of an edge in both rows. A missing edge is inserted, which moves the edges
+	 * of the later rows, so it takes time proportional to the number of edges.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @param weight - the new weight
+	 */
+	public void setWeight(int i, int j, double weight) {
+		if(i == j)
+			return;
+		int position = this.find(i, j);
+		if(position == -1) {
+			if(weight == 0)
+				return;
+			this.insert(i, j);
+			this.insert(j, i);
+			position = this.find(i, j);
+		}
+		this.weights[position] = this.weights[this.find(j, i)] = (float)weight;
+	}
+
+
+	/**
+	 * Insert an edge with weight 0 into a row. The arrays keep some free space at their end,
+	 * so a series of insertions does not reallocate them every time.
+	 */
+	private void insert(int i, int j) {
+		int size = this.getSize(), end = this.rowStart[size];
+		if(end == this.columns.length) {
+			this.columns = Arrays.copyOf(this.columns, Math.max(16, 2 * end));
+			this.weights = Arrays.copyOf(this.weights, this.columns.length);
+		}
+		int position = -(Arrays.binarySearch(this.columns, this.rowStart[i], this.rowStart[i + 1], j) + 1);
+		System.arraycopy(this.columns, position, this.columns, position + 1, end - position);
+		System.arraycopy(this.weights, position, this.weights, position + 1, end - position);
+		this.columns[position] = j;
+		this.weights[position] = 0.0f;
+		for(int r = i + 1; r <= size; r++)
+			this.rowStart[r]++;
+	}
+
+
+	/**
+	 * Get the signs of the weights as a dense matrix. It is built on every call and takes size^2 memory,
+	 * so it is only meant for small problems.
+	 * @return the signs.
+	 */
+	@Override
+	public int[][] getCorrelationMatrix() {
+		int size = this.getSize();
+		int[][] signs = new int[size][size];
+		for(int i = 0; i < size; i++)
+			for(int k = this.rowStart[i]; k < this.rowStart[i + 1]; k++)
+				signs[i][this.columns[k]] = this.weights[k] > 0 ? 1 : (this.weights[k] < 0 ? -1 : 0);
+		return signs;
+	}
+
+
+	/**
+	 * Replace the edges with the non-zero values of a dense matrix.
+	 * @param correlationMatrix - the new values
+	 */
+	@Override
+	public void setCorrelationMatrix(int[][] correlationMatrix) {
+		int size = this.getSize(), count = 0;
+		int[] from = new int[16], to = new int[16];
+		float[] weight = new float[16];
+		for(int i = 0; i < size; i++)
+			for(int j = i + 1; j < size; j++)
+				if(correlationMatrix[i][j] != 0) {
+					if(count == from.length) {
+						from = Arrays.copyOf(from, 2 * count);
+						to = Arrays.copyOf(to, 2 * count);
+						weight = Arrays.copyOf(weight, 2 * count);
+					}
+					from[count] = i;
+					to[count] = j;
+					weight[count] = correlationMatrix[i][j];
+					count++;
+				}
+		this.build(size, from, to, weight, count);
+	}
+
+
+	@Override
+	public CorrelationMatrix permute(int[] order) {
+		int size = this.getSize();
+		int[] position = new int[size];
+		for(int k = 0; k < size; k++)
+			position[order[k]] = k;
+
+		// every edge once, renamed
+		int count = 0;
+		int[] from = new int[this.getNumberOfEdges()], to = new int[from.length];
+		float[] weight = new float[from.length];
+		for(int i = 0; i < size; i++)
+			for(int k = this.rowStart[i]; k < this.rowStart[i + 1]; k++)
+				if(this.columns[k] > i) {
+					from[count] = position[i];
+					to[count] = position[this.columns[k]];
+					weight[count] = this.weights[k];
+					count++;
+				}
+		return new SparseCorrelationMatrix(size, from, to, weight, count);
+	}
+
+
+	@Override
+	public boolean isWeighted() {
+		return true;
+	}
+
+
+	@Override
+	public double computeError(int[] labels, int offset, int size) {
+		double value = 0.0;
+		// only the stored edges can be errors, each is visited from its smaller end
+		for(int i = 0; i < size; i++)
+			for(int k = this.rowStart[i]; k < this.rowStart[i + 1]; k++)
+				if(this.columns[k] > i)
+					value += error(this.weights[k], labels[offset + i] == labels[offset + this.columns[k]]);
+		return value;
+	}
+
+
+	@Override
+	public double moveDelta(int[] labels, int offset, int size, int node, int newLabel) {
+		int oldLabel = labels[offset + node];
+		double delta = 0.0;
+		for(int k = this.rowStart[node]; k < this.rowStart[node + 1]; k++) {
+			int label = labels[offset + this.columns[k]];
+			delta += error(this.weights[k], label == newLabel) - error(this.weights[k], label == oldLabel);
+		}
+		return delta;
+	}
+
+
+	@Override
+	public int sumTowardsLabels(int[] labels, int offset, int size, int node, double[] positive, double[] negative, int[] touched) {
+		int count = 0;
+		for(int k = this.rowStart[node]; k < this.rowStart[node + 1]; k++)
+			if(this.weights[k] != 0)
+				count = add(labels[offset + this.columns[k]], this.weights[k], positive, negative, touched, count);
+		return count;
+	}
+
+
+	/**
+	 * Get the non-zero edges of a node in time proportional to its degree.
+	 */
+	@Override
+	public int getNeighbours(int node, int[] columns, double[] weights) {
+		int count = 0;
+		for(int k = this.rowStart[node]; k < this.rowStart[node + 1]; k++)
+			if(this.weights[k] != 0) {
+				columns[count] = this.columns[k];
+				weights[count] = this.weights[k];
+				count++;
+			}
+		return count;
+	}
+
+
+	@Override
+	public CorrelationMatrix subMatrix(int[] nodes) {
+		// the nodes sorted together with their positions, so the cost does not depend on the size of the matrix
+		long[] sorted = new long[nodes.length];
+		for(int a = 0; a < nodes.length; a++)
+			sorted[a] = ((long)nodes[a] << 32) | a;
+		Arrays.sort(sorted);
+		int[] members = new int[nodes.length];
+		for(int a = 0; a < nodes.length; a++)
+			members[a] = (int)(sorted[a] >>> 32);
+
+		// the edges inside the nodes, each once
+		int count = 0;
+		int[] from = new int[16], to = new int[16];
+		float[] weight = new float[16];
+		for(int a = 0; a < nodes.length; a++)
+			for(int k = this.rowStart[nodes[a]]; k < this.rowStart[nodes[a] + 1]; k++) {
+				int found = Arrays.binarySearch(members, this.columns[k]);
+				if(found < 0 || (int)sorted[found] <= a)
+					continue;
+				int b = (int)sorted[found];
+				if(count == from.length) {
+					from = Arrays.copyOf(from, 2 * count);
+					to = Arrays.copyOf(to, 2 * count);
+					weight = Arrays.copyOf(weight, 2 * count);
+				}
+				from[count] = a;
+				to[count] = b;
+				weight[count] = this.weights[k];
+				count++;
+			}
+		return new SparseCorrelationMatrix(nodes.length, from, to, weight, count);
+	}
+
+
+	/**
+	 * Get the start of the rows.
+	 * @return the position of the first edge of each row, with the number of stored edges at the end.
+	 */
+	public int[] getRowStart() {
+		return rowStart;
+	}
+
+
+	/**
+	 * Get the columns of the stored edges. The array may be longer than the number of stored edges.
+	 * @return the columns.
+	 */
+	public int[] getColumns() {
+		return columns;
+	}
+
+
+	/**
+	 * Get the weights of the stored edges. The array may be longer than the number of stored edges.
+	 * @return the weights.
+	 */
+	public float[] getWeights() {
+		return weights;
+	}
+
+
+	/**
+	 * Get the number of edges.
+	 * @return the number of edges, each counted once.
+	 */
+	public int getNumberOfEdges() {
+		return this.rowStart[this.getSize()] / 2;
+	}
+
+}
@@ -0,0 +1,188 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+public class TextResultWriter extends ResultWriter {
+
+	private OutputStream out;
+	private int decimals;
+	private long scale;
+	private int[] start = new int[1];
+
+	// the digits of a number are collected backwards here
+	private byte[] digits = new byte[24];
+
+
+	/**
+	 * Constructor. Creates a writer producing lines of text, separated by ';' in the statistics.
+	 * The numbers are formatted directly into the stream, without creating Strings.
+	 * @param out - the output stream
+	 * @param decimals - the number of decimals of the statistics
+	 */
+	public TextResultWriter(OutputStream out, int decimals) {
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		this.decimals = decimals;
+		this.scale = 1;
+		for(int i = 0; i < decimals; i++)
+			this.scale *= 10;
+	}
+
+
+	/**
+	 * Write the names of the statistics columns.
+	 * @param columns - the names
+	 * @throws IOException
+	 */
+	public void writeHeader(String... columns) throws IOException {
+		for(int i = 0; i < columns.length; i++) {
+			if(i > 0)
+				this.out.write(';');
+			this.writeText(columns[i]);
+		}
+		this.out.write('\n');
+	}
+
+
+	/**
+	 * Write a comment line starting with '#'. It is meant for headers, not for the hot path.
+	 * @param comment - the comment
+	 * @throws IOException
+	 */
+	public void writeComment(String comment) throws IOException {
+		this.out.write('#');
+		this.out.write(' ');
+		this.writeText(comment);
+		this.out.write('\n');
+	}
+
+
+	/**
+	 * Write the solution as "value;label label ..." followed by one line per cluster with its members.
+	 */
+	@Override
+	public void writeSolution(Cluster solution) throws IOException {
+		int size = solution.getSize();
+		int[] labels = labelsOf(solution);
+
+		this.writeFixed(solution.getValue());
+		this.out.write(';');
+		for(int i = 0; i < size; i++) {
+			if(i > 0)
+				this.out.write(' ');
+			this.writeLong(labels[i]);
+		}
+		this.out.write('\n');
+
+		if(this.start.length < size + 1)
+			this.start = new int[size + 1];
+		int[] members = groupMembers(labels, size, this.start);
+		for(int c = 0; c < size; c++) {
+			if(this.start[c] == this.start[c + 1])
+				continue;
+			this.writeLong(c);
+			this.out.write(':');
+			for(int k = this.start[c]; k < this.start[c + 1]; k++) {
+				this.out.write(' ');
+				this.writeLong(members[k]);
+			}
+			this.out.write('\n');
+		}
+	}
+
+
+	@Override
+	public void writeStatistics(double... values) throws IOException {
+		for(int i = 0; i < values.length; i++) {
+			if(i > 0)
+				this.out.write(';');
+			this.writeFixed(values[i]);
+		}
+		this.out.write('\n');
+	}
+
+
+	/**
+	 * Write a line of mixed columns separated by ';': Integers and Longs without decimals, other numbers
+	 * with the given number of decimals and everything else as text. It is meant for summaries, the
+	 * boxing makes it slower than writeStatistics.
+	 * @param values - the values
+	 * @throws IOException
+	 */
+	public void writeRow(Object... values) throws IOException {
+		for(int i = 0; i < values.length; i++) {
+			if(i > 0)
+				this.out.write(';');
+			if(values[i] instanceof Integer || values[i] instanceof Long)
+				this.writeLong(((Number)values[i]).longValue());
+			else if(values[i] instanceof Number)
+				this.writeFixed(((Number)values[i]).doubleValue());
+			else
+				this.writeText(String.valueOf(values[i]));
+		}
+		this.out.write('\n');
+	}
+
+
+	/**
+	 * Write an integer.
+	 */
+	private void writeLong(long value) throws IOException {
+		if(value < 0) {
+			this.out.write('-');
+			value = -value;
+		}
+		int count = 0;
+		do {
+			this.digits[count++] = (byte)('0' + value % 10);
+			value /= 10;
+		} while(value > 0);
+		while(count > 0)
+			this.out.write(this.digits[--count]);
+	}
+
+
+	/**
+	 * Write a number with the given number of decimals.
+	 */
+	private void writeFixed(double value) throws IOException {
+		if(Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) * this.scale >= Long.MAX_VALUE) {
+			this.writeText(Double.toString(value));
+			return;
+		}
+		long scaled = Math.round(Math.abs(value) * this.scale);
+		if(value < 0 && scaled != 0)
+			this.out.write('-');
+		this.writeLong(scaled / this.scale);
+		if(this.decimals > 0) {
+			this.out.write('.');
+			long fraction = scaled % this.scale;
+			for(long divisor = this.scale / 10; divisor > 0; divisor /= 10) {
+				this.out.write((int)('0' + fraction / divisor));
+				fraction %= divisor;
+			}
+		}
+	}
+
+
+	/**
+	 * Write a text made of ASCII characters.
+	 */
+	private void writeText(String text) throws IOException {
+		for(int i = 0; i < text.length(); i++)
+			this.out.write(text.charAt(i));
+	}
+
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+}
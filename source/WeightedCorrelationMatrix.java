@@ -0,0 +1,171 @@
+public class WeightedCorrelationMatrix extends CorrelationMatrix {
+
+	/*
+	 * The weights of the edges, the only storage of the matrix. The signs are derived from them.
+	 */
+	private float[][] weights;
+
+
+	/**
+	 * Constructor for an empty weighted correlation matrix.
+	 * @param size - size of the matrix
+	 */
+	public WeightedCorrelationMatrix(int size) {
+		super(size, null);
+		this.weights = new float[size][size];
+	}
+
+
+	/**
+	 * Get the weights.
+	 * @return the weights
+	 */
+	public float[][] getWeights() {
+		return weights;
+	}
+
+
+	@Override
+	public double getWeight(int i, int j) {
+		return this.weights[i][j];
+	}
+
+
+	@Override
+	public int getEdge(int i, int j) {
+		float weight = this.weights[i][j];
+		return weight > 0 ? 1 : (weight < 0 ? -1 : 0);
+	}
+
+
+	/**
+	 * Set the weight of an edge in both directions. Positive weights mean similar, negative weights
+	 * dissimilar nodes. A clustering pays the weight of every positive edge it cuts and the absolute weight
+	 * of every negative edge it keeps inside a cluster.
+	 * @param i - the first node
+	 * @param j - the second node
+	 * @param weight - the new weight
+	 */
+	public void setWeight(int i, int j, double weight) {
+		if(i == j)
+			return;
+		this.weights[i][j] = this.weights[j][i] = (float)weight;
+	}
+
+
+	/**
+	 * Set the sign of an edge. A flipped edge keeps its weight, an inserted one gets weight 1.
+	 * @return the sign of the previous weight.
+	 */
+	@Override
+	public int setEdge(int i, int j, int value) {
+		int previous = this.getEdge(i, j);
+		if(i != j)
+			this.weights[i][j] = this.weights[j][i] = signedWeight(this.weights[i][j], value);
+		return previous;
+	}
+
+
+	/**
+	 * Get the signs of the weights. The dense sign matrix is built on every call.
+	 * @return the signs.
+	 */
+	@Override
+	public int[][] getCorrelationMatrix() {
+		int size = this.getSize();
+		int[][] signs = new int[size][size];
+		for(int i = 0; i < size; i++)
+			for(int j = 0; j < size; j++)
+				signs[i][j] = this.getEdge(i, j);
+		return signs;
+	}
+
+
+	/**
+	 * Overwrite the weights with the values of a matrix.
+	 * @param correlationMatrix - the new values
+	 */
+	@Override
+	public void setCorrelationMatrix(int[][] correlationMatrix) {
+		for(int i = 0; i < this.getSize(); i++)
+			for(int j = 0; j < this.getSize(); j++)
+				this.weights[i][j] = correlationMatrix[i][j];
+	}
+
+
+	@Override
+	public CorrelationMatrix permute(int[] order) {
+		WeightedCorrelationMatrix permuted = new WeightedCorrelationMatrix(this.getSize());
+		for(int a = 0; a < this.getSize(); a++)
+			for(int b = a + 1; b < this.getSize(); b++)
+				permuted.setWeight(a, b, this.weights[order[a]][order[b]]);
+		return permuted;
+	}
+
+
+	@Override
+	public boolean isWeighted() {
+		return true;
+	}
+
+
+	@Override
+	public double computeError(int[] labels, int offset, int size) {
+		double value = 0.0;
+		for(int i = 0; i < size; i++) {
+			float[] row = this.weights[i];
+			int label = labels[offset + i];
+			for(int j = i + 1; j < size; j++)
+				value += error(row[j], label == labels[offset + j]);
+		}
+		return value;
+	}
+
+
+	@Override
+	public double moveDelta(int[] labels, int offset, int size, int node, int newLabel) {
+		float[] row = this.weights[node];
+		int oldLabel = labels[offset + node];
+		double delta = 0.0;
+		for(int i = 0; i < size; i++)
+			if(i != node && row[i] != 0)
+				delta += error(row[i], labels[offset + i] == newLabel) - error(row[i], labels[offset + i] == oldLabel);
+		return delta;
+	}
+
+
+	@Override
+	public int sumTowardsLabels(int[] labels, int offset, int size, int node, double[] positive, double[] negative, int[] touched) {
+		float[] row = this.weights[node];
+		int count = 0;
+		for(int i = 0; i < size; i++)
+			if(i != node && row[i] != 0)
+				count = add(labels[offset + i], row[i], positive, negative, touched, count);
+		return count;
+	}
+
+
+	@Override
+	public int getNeighbours(int node, int[] columns, double[] weights) {
+		float[] row = this.weights[node];
+		int count = 0;
+		for(int j = 0; j < this.getSize(); j++)
+			if(j != node && row[j] != 0) {
+				columns[count] = j;
+				weights[count] = row[j];
+				count++;
+			}
+		return count;
+	}
+
+
+	@Override
+	public CorrelationMatrix subMatrix(int[] nodes) {
+		WeightedCorrelationMatrix part = new WeightedCorrelationMatrix(nodes.length);
+		for(int a = 0; a < nodes.length; a++)
+			for(int b = a + 1; b < nodes.length; b++)
+				part.setWeight(a, b, this.weights[nodes[a]][nodes[b]]);
+		return part;
+	}
+
+}